@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import zhong.snowflake.starter.core.SnowflakeIdDecoder;
+import zhong.snowflake.starter.core.SnowflakeIdGenerator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析 1048576 个 ID 的平均耗时，单位：ns/ID<p>
+ * 对比逐个调用静态解析方法、{@link SnowflakeIdDecoder} 批量解析 long[] 与堆外 LongBuffer，
+ * 以及添加 jdk.incubator.vector 模块后的 Vector API 路径
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+    private static final int COUNT = 1 << 20;
+    private static final long START_TIME = SnowflakeIdGenerator.getTimestampValue(0L);
+    private static final int FLAGS_SHIFT = Integer.bitCount(SnowflakeIdGenerator.MAX_SEQUENCE);
+    private static final int TIMESTAMP_SHIFT = Integer.bitCount(SnowflakeIdGenerator.MAX_FLAGS) + FLAGS_SHIFT;
+
+    private long[] ids;
+    private LongBuffer direct;
+    private long[] timestamps;
+    private int[] dataCenterIds;
+    private int[] workerIds;
+    private int[] sequences;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(20240101L);
+        final long now = System.currentTimeMillis();
+        ids = new long[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            final long timestamp = now - random.nextInt(86_400_000) - START_TIME;
+            final long flags = random.nextInt(SnowflakeIdGenerator.MAX_FLAGS + 1);
+            final long sequence = random.nextInt(SnowflakeIdGenerator.MAX_SEQUENCE + 1);
+            ids[i] = (timestamp << TIMESTAMP_SHIFT) | (flags << FLAGS_SHIFT) | sequence;
+        }
+        direct = ByteBuffer.allocateDirect(COUNT * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        direct.put(ids).flip();
+        timestamps = new long[COUNT];
+        dataCenterIds = new int[COUNT];
+        workerIds = new int[COUNT];
+        sequences = new int[COUNT];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int[] perField() {
+        for (int i = 0; i < COUNT; i++) {
+            final long id = ids[i];
+            timestamps[i] = SnowflakeIdGenerator.getTimestampValue(id);
+            dataCenterIds[i] = SnowflakeIdGenerator.getDataCenterIdValue(id);
+            workerIds[i] = SnowflakeIdGenerator.getWorkerIdValue(id);
+            sequences[i] = SnowflakeIdGenerator.getSequenceValue(id);
+        }
+        return sequences;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int[] bulkArray() {
+        SnowflakeIdDecoder.decode(ids, 0, COUNT, timestamps, dataCenterIds, workerIds, sequences);
+        return sequences;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int[] bulkDirectBuffer() {
+        SnowflakeIdDecoder.decode(direct, timestamps, dataCenterIds, workerIds, sequences);
+        return sequences;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+    public int[] bulkArrayVector() {
+        SnowflakeIdDecoder.decode(ids, 0, COUNT, timestamps, dataCenterIds, workerIds, sequences);
+        return sequences;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import zhong.snowflake.starter.SnowflakeProps;
+import zhong.snowflake.starter.core.InMemoryRedisLock;
+import zhong.snowflake.starter.core.RedisSnowflakeIdGenerator;
+import zhong.snowflake.starter.core.SnowflakeIdGenerator;
+import zhong.snowflake.starter.core.VirtualClock;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10000 个调用方挂起等待请求，每次唤醒其中 4096 个各自调用一次 {@link RedisSnowflakeIdGenerator#getNextId(long, TimeUnit)}，
+ * 测量全部拿到 ID 的耗时<p>
+ * 每次唤醒的数量等于单个 flags 每毫秒的序号数，连续唤醒时单个 flags 受单毫秒 ID 上限约束，
+ * maxLeases 大于 1 时预热期间弹性扩容，每个 flags 一个 idGenerator，耗时反映平台线程、虚拟线程调用方的唤醒与调度开销；
+ * Redis 由 {@link InMemoryRedisLock} 模拟，定时任务按默认配置运行
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadBenchmark {
+    private static final int CALLERS = 10_000;
+    private static final int BURST = SnowflakeIdGenerator.MAX_SEQUENCE + 1;
+    private static final long TIMEOUT = 10_000;
+
+    /**
+     * 调用方线程，platform：平台线程，virtual：虚拟线程
+     */
+    @Param({"platform", "virtual"})
+    public String callers;
+
+    /**
+     * 最多同时锁定的 flags 数量，1：单毫秒 ID 上限作为对照
+     */
+    @Param({"1", "4"})
+    public int maxLeases;
+
+    private final Semaphore requests = new Semaphore(0);
+    private volatile CountDownLatch responses;
+    private RedisSnowflakeIdGenerator idGenerator;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        final InMemoryRedisLock redisLock = new InMemoryRedisLock(new InMemoryRedisLock.Store(new VirtualClock(System.currentTimeMillis())), 0);
+        idGenerator = new RedisSnowflakeIdGenerator();
+        final SnowflakeProps props = new SnowflakeProps();
+        props.setMaxLeases(maxLeases);
+        inject(idGenerator, "snowflakeProps", props);
+        inject(idGenerator, "redisLock", redisLock);
+        inject(idGenerator, "stringRedisTemplate", newStringRedisTemplate(redisLock));
+        idGenerator.init();
+
+        final ThreadFactory threadFactory = "virtual".equals(callers) ? Thread.ofVirtual().factory() : Thread.ofPlatform().factory();
+        executor = Executors.newThreadPerTaskExecutor(threadFactory);
+        for (int i = 0; i < CALLERS; i++) {
+            executor.execute(this::call);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        executor.close();
+        idGenerator.destroy();
+    }
+
+    @Benchmark
+    public void getNextId() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(BURST);
+        responses = latch;
+        requests.release(BURST);
+        if (!latch.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("等待调用方获取 ID 超时");
+        }
+    }
+
+    private void call() {
+        try {
+            for (; ; ) {
+                requests.acquire();
+                if (idGenerator.getNextId(TIMEOUT, TimeUnit.MILLISECONDS) == null) {
+                    throw new IllegalStateException("获取 ID 超时");
+                }
+                responses.countDown();
+            }
+        } catch (InterruptedException e) {
+            // tearDown 中断后结束
+        }
+    }
+
+    private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+        final Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    /**
+     * 按脚本返回类型区分延长时长脚本与释放脚本，与 RedisSnowflakeIdGeneratorTest 中的实现一致
+     */
+    @SuppressWarnings("unchecked")
+    private static StringRedisTemplate newStringRedisTemplate(InMemoryRedisLock redisLock) {
+        final Map<Object, Object> map = new ConcurrentHashMap<>();
+        final ValueOperations<String, String> ops = (ValueOperations<String, String>) Proxy.newProxyInstance(
+                ValueOperations.class.getClassLoader(), new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "get":
+                            return map.get(args[0]);
+                        case "set":
+                            map.put(args[0], args[1]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return new StringRedisTemplate() {
+            @Override
+            public ValueOperations<String, String> opsForValue() {
+                return ops;
+            }
+
+            @Override
+            public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+                if (script.getResultType() == Long.class) {
+                    final boolean success = redisLock.expire(keys.get(0), (String) args[0], 1, TimeUnit.MILLISECONDS);
+                    if (success && !"".equals(args[1])) {
+                        map.put(keys.get(1), args[1]);
+                    }
+                    return (T) Long.valueOf(success ? 1 : 0);
+                }
+                final boolean[] success = redisLock.renew(keys, (String) args[0], Long.parseLong((String) args[1]), TimeUnit.MILLISECONDS);
+                final long redisTime = System.currentTimeMillis();
+                final List<Long> result = new ArrayList<>(success.length + 2);
+                result.add(redisTime / 1000);
+                result.add(redisTime % 1000 * 1000);
+                for (boolean e : success) {
+                    result.add(e ? 1L : 0L);
+                }
+                return (T) result;
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import zhong.redis.lock.starter.core.RedisLock;
+import zhong.snowflake.starter.test.Application;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在真实 Redis 上验证续期、释放脚本与 RedisLock 的存储格式一致
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = {Application.class})
+public class RenewScriptTest {
+    private static final Logger log = LoggerFactory.getLogger(RenewScriptTest.class);
+
+    private final String key = "snowflake:renew-test:" + UUID.randomUUID();
+    private final String otherKey = "snowflake:renew-test:" + UUID.randomUUID();
+    private final String value = UUID.randomUUID().toString();
+
+    @Autowired
+    private RedisLock redisLock;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @After
+    public void tearDown() {
+        stringRedisTemplate.delete(Arrays.asList(key, otherKey));
+    }
+
+    @Test
+    public void test_renew() {
+        Assert.assertTrue(redisLock.lock(key, value, 1_000, TimeUnit.MILLISECONDS));
+
+        final List<?> result = stringRedisTemplate.execute(RedisSnowflakeIdGenerator.RENEW_SCRIPT,
+                Collections.singletonList(key), value, "60000");
+        log.info("续期结果={}", result);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(3, result.size());
+        Assert.assertTrue((Long) result.get(0) * 1000 > System.currentTimeMillis() - 60_000);
+        Assert.assertEquals(1L, result.get(2));
+
+        final Long ttl = stringRedisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(ttl);
+        Assert.assertTrue("ttl=" + ttl, ttl > 1_000);
+    }
+
+    @Test
+    public void test_renew_multipleKeys() {
+        Assert.assertTrue(redisLock.lock(key, value, 1_000, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(redisLock.lock(otherKey, UUID.randomUUID().toString(), 1_000, TimeUnit.MILLISECONDS));
+
+        // 每个 key 单独判断 value，不存在的 key 返回 0
+        final String missingKey = "snowflake:renew-test:" + UUID.randomUUID();
+        final List<?> result = stringRedisTemplate.execute(RedisSnowflakeIdGenerator.RENEW_SCRIPT,
+                Arrays.asList(key, otherKey, missingKey), value, "60000");
+        log.info("续期结果={}", result);
+        Assert.assertNotNull(result);
+        Assert.assertEquals(Arrays.asList(1L, 0L, 0L), result.subList(2, result.size()));
+
+        final Long ttl = stringRedisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(ttl);
+        Assert.assertTrue("ttl=" + ttl, ttl > 1_000);
+        final Long otherTtl = stringRedisTemplate.getExpire(otherKey, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(otherTtl);
+        Assert.assertTrue("ttl=" + otherTtl, otherTtl <= 1_000);
+    }
+
+    @Test
+    public void test_release() throws InterruptedException {
+        Assert.assertTrue(redisLock.lock(key, value, 60_000, TimeUnit.MILLISECONDS));
+
+        // value 不一致时不记录时间戳，也不缩短过期时间
+        Long result = stringRedisTemplate.execute(RedisSnowflakeIdGenerator.RELEASE_SCRIPT,
+                Arrays.asList(key, otherKey), UUID.randomUUID().toString(), "1");
+        Assert.assertEquals(Long.valueOf(0), result);
+        Assert.assertNull(stringRedisTemplate.opsForValue().get(otherKey));
+        final Long ttl = stringRedisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull(ttl);
+        Assert.assertTrue("ttl=" + ttl, ttl > 1_000);
+
+        result = stringRedisTemplate.execute(RedisSnowflakeIdGenerator.RELEASE_SCRIPT,
+                Arrays.asList(key, otherKey), value, "1");
+        Assert.assertEquals(Long.valueOf(1), result);
+        Assert.assertEquals("1", stringRedisTemplate.opsForValue().get(otherKey));
+        Thread.sleep(10);
+        Assert.assertTrue(redisLock.lock(key, UUID.randomUUID().toString(), 1_000, TimeUnit.MILLISECONDS));
+    }
+}
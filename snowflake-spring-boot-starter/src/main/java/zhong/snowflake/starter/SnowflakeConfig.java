@@ -16,10 +16,22 @@
 
 package zhong.snowflake.starter;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.health.ConditionalOnEnabledHealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import zhong.snowflake.starter.core.DuplicateIdEvent;
+import zhong.snowflake.starter.core.IdGenerator;
+import zhong.snowflake.starter.core.JdbcSegmentIdGenerator;
+import zhong.snowflake.starter.core.RedisSnowflakeHealthIndicator;
+import zhong.snowflake.starter.core.RedisSnowflakeIdGenerator;
+import zhong.snowflake.starter.core.SampledDuplicateDetector;
 
 import java.util.UUID;
 
@@ -27,8 +39,8 @@ import java.util.UUID;
  * @author Zhong
  * @since 0.0.1
  */
-@ComponentScan
-@Configuration
+@Configuration(proxyBeanMethods = false)
+@Import({RedisSnowflakeIdGenerator.class, JdbcSegmentIdGenerator.class})
 @EnableConfigurationProperties(SnowflakeProps.class)
 @ConditionalOnProperty(prefix = SnowflakeProps.PROPERTIES_PREFIX, name = "enable", havingValue = "true", matchIfMissing = false)
 public class SnowflakeConfig {
@@ -37,4 +49,40 @@ public class SnowflakeConfig {
     static {
         SERVER_UUID = UUID.randomUUID().toString();
     }
+
+    /**
+     * 配置 duplicate-sample 后注入 {@link IdGenerator} 得到带抽样重复检测的装饰对象
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = SnowflakeProps.PROPERTIES_PREFIX, name = "duplicate-sample")
+    public SampledDuplicateDetector sampledDuplicateDetector(SnowflakeProps snowflakeProps,
+                                                             ObjectProvider<RedisSnowflakeIdGenerator> redisSnowflakeIdGenerator,
+                                                             ObjectProvider<JdbcSegmentIdGenerator> jdbcSegmentIdGenerator,
+                                                             ApplicationEventPublisher publisher) {
+        final RedisSnowflakeIdGenerator snowflake = redisSnowflakeIdGenerator.getIfAvailable();
+        final IdGenerator delegate = snowflake != null ? snowflake : jdbcSegmentIdGenerator.getObject();
+        // 过滤器按每个窗口预计抽中的 ID 数量分配，峰值超过 duplicate-rate 时写满后只检测不写入
+        final long capacity = (long) snowflakeProps.getDuplicateRate() * snowflakeProps.getDuplicateWindow() / 1000 / snowflakeProps.getDuplicateSample();
+        return new SampledDuplicateDetector(delegate, snowflakeProps.getDuplicateSample(), snowflakeProps.getDuplicateWindow(),
+                SampledDuplicateDetector.getBits(capacity), id -> publisher.publishEvent(new DuplicateIdEvent(delegate, id)));
+    }
+
+    /**
+     * 开启 async-init 且引入 spring-boot-starter-actuator 时注册健康检查 snowflake，可加入 readiness 分组<p>
+     * 未持有标志位时为 OUT_OF_SERVICE，同步启动时不注册，避免 /actuator/health 返回 503；
+     * 可以通过 management.health.snowflake.enabled=false 关闭
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = {"org.springframework.boot.actuate.health.HealthIndicator",
+            "org.springframework.boot.actuate.autoconfigure.health.ConditionalOnEnabledHealthIndicator"})
+    @ConditionalOnProperty(prefix = SnowflakeProps.PROPERTIES_PREFIX, name = "mode", havingValue = SnowflakeProps.MODE_SNOWFLAKE, matchIfMissing = true)
+    @ConditionalOnEnabledHealthIndicator("snowflake")
+    public static class HealthConfig {
+        @Bean
+        @ConditionalOnProperty(prefix = SnowflakeProps.PROPERTIES_PREFIX, name = "async-init", havingValue = "true")
+        public RedisSnowflakeHealthIndicator snowflakeHealthIndicator(RedisSnowflakeIdGenerator redisSnowflakeIdGenerator) {
+            return new RedisSnowflakeHealthIndicator(redisSnowflakeIdGenerator);
+        }
+    }
 }
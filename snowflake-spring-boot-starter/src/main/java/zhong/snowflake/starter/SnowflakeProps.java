@@ -18,11 +18,13 @@ package zhong.snowflake.starter;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
+import zhong.snowflake.starter.core.SegmentIdGenerator;
 import zhong.snowflake.starter.core.SnowflakeIdGenerator;
 
 import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.Pattern;
 
 /**
  * @author Zhong
@@ -31,12 +33,37 @@ import javax.validation.constraints.Min;
 @Validated
 @ConfigurationProperties(prefix = SnowflakeProps.PROPERTIES_PREFIX)
 public class SnowflakeProps {
-    static final String PROPERTIES_PREFIX = "zhong.snowflake";
+    public static final String PROPERTIES_PREFIX = "zhong.snowflake";
+    public static final String MODE_SNOWFLAKE = "snowflake";
+    public static final String MODE_SEGMENT = "segment";
 
     private static final int MIN_KEEP_ALIVE = 5_000;
     private static final int DEFAULT_KEEP_ALIVE = 60_000;
     private static final String MIN_FACTOR = "1.1";
     private static final double DEFAULT_FACTOR = 1.5;
+    private static final boolean DEFAULT_STANDBY = false;
+    private static final boolean DEFAULT_KEYSPACE_NOTIFY = false;
+    private static final boolean DEFAULT_ASYNC_INIT = false;
+    private static final int MIN_INIT_TIMEOUT = 0;
+    private static final int DEFAULT_INIT_TIMEOUT = 3_000;
+    private static final int MIN_MAX_LEASES = 1;
+    private static final int MAX_MAX_LEASES = 32;
+    private static final int DEFAULT_MAX_LEASES = 1;
+    private static final int MIN_MAX_CLOCK_SKEW = 0;
+    private static final int DEFAULT_MAX_CLOCK_SKEW = 1_000;
+    private static final int MIN_DUPLICATE_SAMPLE = 1;
+    private static final int MIN_DUPLICATE_WINDOW = 1_000;
+    private static final int DEFAULT_DUPLICATE_WINDOW = 60_000;
+    private static final int MIN_DUPLICATE_RATE = 1;
+    private static final int DEFAULT_DUPLICATE_RATE = 10_000;
+    private static final String DEFAULT_SEGMENT_TABLE = "snowflake_segment";
+    private static final String DEFAULT_SEGMENT_BIZ_TAG = "default";
+    private static final int DEFAULT_SEGMENT_STEP = 1_000;
+    private static final int MIN_SEGMENT_DURATION = 1_000;
+    private static final int DEFAULT_SEGMENT_DURATION = 900_000;
+
+    @Pattern(regexp = MODE_SNOWFLAKE + "|" + MODE_SEGMENT)
+    private String mode = MODE_SNOWFLAKE;
 
     @Min(value = MIN_KEEP_ALIVE)
     private Integer keepAlive = DEFAULT_KEEP_ALIVE;
@@ -44,6 +71,24 @@ public class SnowflakeProps {
     @DecimalMin(value = MIN_FACTOR)
     private Double factor = DEFAULT_FACTOR;
 
+    private Boolean standby = DEFAULT_STANDBY;
+
+    private Boolean keyspaceNotify = DEFAULT_KEYSPACE_NOTIFY;
+
+    private Boolean asyncInit = DEFAULT_ASYNC_INIT;
+
+    @Min(value = MIN_INIT_TIMEOUT)
+    private Integer initTimeout = DEFAULT_INIT_TIMEOUT;
+
+    private String sharedFile;
+
+    @Max(value = MAX_MAX_LEASES)
+    @Min(value = MIN_MAX_LEASES)
+    private Integer maxLeases = DEFAULT_MAX_LEASES;
+
+    @Min(value = MIN_MAX_CLOCK_SKEW)
+    private Integer maxClockSkew = DEFAULT_MAX_CLOCK_SKEW;
+
     @Max(value = SnowflakeIdGenerator.MAX_FLAGS)
     @Min(value = SnowflakeIdGenerator.MIN_FLAGS)
     private Integer flags;
@@ -56,6 +101,35 @@ public class SnowflakeProps {
     @Min(value = SnowflakeIdGenerator.MIN_WORKER_ID)
     private Integer workerId;
 
+    @Min(value = MIN_DUPLICATE_SAMPLE)
+    private Integer duplicateSample;
+
+    @Min(value = MIN_DUPLICATE_WINDOW)
+    private Integer duplicateWindow = DEFAULT_DUPLICATE_WINDOW;
+
+    @Min(value = MIN_DUPLICATE_RATE)
+    private Integer duplicateRate = DEFAULT_DUPLICATE_RATE;
+
+    @Pattern(regexp = "[A-Za-z0-9_.]+")
+    private String segmentTable = DEFAULT_SEGMENT_TABLE;
+
+    private String segmentBizTag = DEFAULT_SEGMENT_BIZ_TAG;
+
+    @Max(value = SegmentIdGenerator.MAX_STEP)
+    @Min(value = SegmentIdGenerator.MIN_STEP)
+    private Integer segmentStep = DEFAULT_SEGMENT_STEP;
+
+    @Min(value = MIN_SEGMENT_DURATION)
+    private Integer segmentDuration = DEFAULT_SEGMENT_DURATION;
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
     public Integer getKeepAlive() {
         return keepAlive;
     }
@@ -72,6 +146,62 @@ public class SnowflakeProps {
         return factor;
     }
 
+    public Boolean getStandby() {
+        return standby;
+    }
+
+    public void setStandby(Boolean standby) {
+        this.standby = standby;
+    }
+
+    public Boolean getKeyspaceNotify() {
+        return keyspaceNotify;
+    }
+
+    public void setKeyspaceNotify(Boolean keyspaceNotify) {
+        this.keyspaceNotify = keyspaceNotify;
+    }
+
+    public Boolean getAsyncInit() {
+        return asyncInit;
+    }
+
+    public void setAsyncInit(Boolean asyncInit) {
+        this.asyncInit = asyncInit;
+    }
+
+    public Integer getInitTimeout() {
+        return initTimeout;
+    }
+
+    public void setInitTimeout(Integer initTimeout) {
+        this.initTimeout = initTimeout;
+    }
+
+    public String getSharedFile() {
+        return sharedFile;
+    }
+
+    public void setSharedFile(String sharedFile) {
+        this.sharedFile = sharedFile;
+    }
+
+    public Integer getMaxLeases() {
+        return maxLeases;
+    }
+
+    public void setMaxLeases(Integer maxLeases) {
+        this.maxLeases = maxLeases;
+    }
+
+    public Integer getMaxClockSkew() {
+        return maxClockSkew;
+    }
+
+    public void setMaxClockSkew(Integer maxClockSkew) {
+        this.maxClockSkew = maxClockSkew;
+    }
+
     public Integer getFlags() {
         return flags;
     }
@@ -95,4 +225,60 @@ public class SnowflakeProps {
     public void setWorkerId(Integer workerId) {
         this.workerId = workerId;
     }
+
+    public Integer getDuplicateSample() {
+        return duplicateSample;
+    }
+
+    public void setDuplicateSample(Integer duplicateSample) {
+        this.duplicateSample = duplicateSample;
+    }
+
+    public Integer getDuplicateWindow() {
+        return duplicateWindow;
+    }
+
+    public void setDuplicateWindow(Integer duplicateWindow) {
+        this.duplicateWindow = duplicateWindow;
+    }
+
+    public Integer getDuplicateRate() {
+        return duplicateRate;
+    }
+
+    public void setDuplicateRate(Integer duplicateRate) {
+        this.duplicateRate = duplicateRate;
+    }
+
+    public String getSegmentTable() {
+        return segmentTable;
+    }
+
+    public void setSegmentTable(String segmentTable) {
+        this.segmentTable = segmentTable;
+    }
+
+    public String getSegmentBizTag() {
+        return segmentBizTag;
+    }
+
+    public void setSegmentBizTag(String segmentBizTag) {
+        this.segmentBizTag = segmentBizTag;
+    }
+
+    public Integer getSegmentStep() {
+        return segmentStep;
+    }
+
+    public void setSegmentStep(Integer segmentStep) {
+        this.segmentStep = segmentStep;
+    }
+
+    public Integer getSegmentDuration() {
+        return segmentDuration;
+    }
+
+    public void setSegmentDuration(Integer segmentDuration) {
+        this.segmentDuration = segmentDuration;
+    }
 }
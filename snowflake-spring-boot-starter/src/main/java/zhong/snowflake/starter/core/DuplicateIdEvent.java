@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * {@link SampledDuplicateDetector} 检测到疑似重复 ID 时发布
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+public class DuplicateIdEvent extends ApplicationEvent {
+    private final long id;
+
+    public DuplicateIdEvent(Object source, long id) {
+        super(source);
+        this.id = id;
+    }
+
+    public long getId() {
+        return id;
+    }
+}
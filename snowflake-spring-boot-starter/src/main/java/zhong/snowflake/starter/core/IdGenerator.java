@@ -16,10 +16,40 @@
 
 package zhong.snowflake.starter.core;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Zhong
  * @since 0.0.1
  */
 public interface IdGenerator {
+    /**
+     * @return null 暂时没有可用的 ID
+     */
     Long getNextId();
+
+    /**
+     * 获取下一个 ID，暂时没有可用的 ID 时等待，Java 21 及以上版本虚拟线程等待时不占用载体线程
+     *
+     * @param timeout 最长等待时长
+     * @param unit    timeout 的单位
+     * @return null 等待超时
+     * @throws InterruptedException 如果等待被中断
+     */
+    default Long getNextId(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            final Long id = getNextId();
+            if (id != null) {
+                return id;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            Threads.pause();
+        }
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import zhong.snowflake.starter.SnowflakeProps;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+/**
+ * 号段模式，zhong.snowflake.mode=segment 时生效
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+@Component
+@ConditionalOnProperty(prefix = SnowflakeProps.PROPERTIES_PREFIX, name = "mode", havingValue = SnowflakeProps.MODE_SEGMENT)
+public class JdbcSegmentIdGenerator implements IdGenerator {
+    private static final Logger log = LoggerFactory.getLogger(JdbcSegmentIdGenerator.class);
+
+    @Autowired
+    private SnowflakeProps snowflakeProps;
+    @Autowired
+    private DataSource dataSource;
+
+    private volatile SegmentIdGenerator proxyObject;
+
+    @Override
+    public Long getNextId() {
+        return proxyObject.getNextId();
+    }
+
+    @PostConstruct
+    public void init() {
+        log.info("init");
+        log.info("init segmentTable: {}", snowflakeProps.getSegmentTable());
+        log.info("init segmentBizTag: {}", snowflakeProps.getSegmentBizTag());
+        log.info("init segmentStep: {}", snowflakeProps.getSegmentStep());
+        log.info("init segmentDuration: {}", snowflakeProps.getSegmentDuration());
+        proxyObject = new SegmentIdGenerator(dataSource, snowflakeProps.getSegmentTable(), snowflakeProps.getSegmentBizTag(),
+                snowflakeProps.getSegmentStep(), snowflakeProps.getSegmentDuration());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        log.info("destroy");
+        proxyObject.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+/**
+ * 时间戳、序号保存在 {@link SharedSnowflakeState} 中的雪花算法，同一主机多个进程共享一个 flags
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+public class MappedSnowflakeIdGenerator extends SnowflakeIdGenerator {
+    private static final long STATE_SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
+
+    private final SharedSnowflakeState state;
+    private final long flags;
+
+    public MappedSnowflakeIdGenerator(final int flags, final SharedSnowflakeState state) {
+        super(flags);
+        this.flags = ((long) flags) << FLAGS_SHIFT;
+        this.state = state;
+    }
+
+    /**
+     * @return null 当前毫秒 ID 已达上限
+     * @throws IllegalArgumentException 如果当前时间小于共享状态中的时间
+     */
+    @Override
+    public Long getNextId() {
+        for (; ; ) {
+            // 先读状态再读时间，否则其他进程/线程可能在两次读取之间推进状态
+            final long old = state.get();
+            final long now = System.currentTimeMillis() - START_TIME;
+            final long timestamp = old >>> SEQUENCE_BITS;
+            if (now < timestamp) {
+                throw new IllegalArgumentException("now 不能小于 time，[now=" + (now + START_TIME) + ",time=" + (timestamp + START_TIME) + "]");
+            }
+            final long value;
+            if (now != timestamp) {
+                // 序号重置为 0
+                value = now << SEQUENCE_BITS;
+            } else if ((old & STATE_SEQUENCE_MASK) == MAX_SEQUENCE) {
+                // 同一毫秒内生成的 ID 已达到最大值
+                return null;
+            } else {
+                value = old + 1;
+            }
+            if (state.compareAndSet(old, value)) {
+                return ((value >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT) | flags | (value & STATE_SEQUENCE_MASK);
+            }
+        }
+    }
+
+    @Override
+    public long getTimestampValue() {
+        return START_TIME + (state.get() >>> SEQUENCE_BITS);
+    }
+}
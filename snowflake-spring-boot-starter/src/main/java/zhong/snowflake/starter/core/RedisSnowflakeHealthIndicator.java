@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * 持有 flags 时 UP，异步启动尚未获取到 flags、flags 丢失或时钟偏差超过上限时 OUT_OF_SERVICE
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+public class RedisSnowflakeHealthIndicator implements HealthIndicator {
+    private final RedisSnowflakeIdGenerator redisSnowflakeIdGenerator;
+
+    public RedisSnowflakeHealthIndicator(RedisSnowflakeIdGenerator redisSnowflakeIdGenerator) {
+        this.redisSnowflakeIdGenerator = redisSnowflakeIdGenerator;
+    }
+
+    @Override
+    public Health health() {
+        final Health.Builder builder = redisSnowflakeIdGenerator.isReady() ? Health.up() : Health.outOfService();
+        final Integer flags = redisSnowflakeIdGenerator.getFlagsValue();
+        if (flags != null) {
+            builder.withDetail("flags", flags);
+        }
+        final Long clockSkew = redisSnowflakeIdGenerator.getClockSkew();
+        if (clockSkew != null) {
+            builder.withDetail("clockSkew", clockSkew);
+        }
+        return builder.build();
+    }
+}
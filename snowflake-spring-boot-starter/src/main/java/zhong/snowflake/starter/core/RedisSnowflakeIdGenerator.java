@@ -19,27 +19,87 @@ package zhong.snowflake.starter.core;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 import zhong.redis.lock.starter.core.RedisLock;
-import zhong.redis.lock.starter.utils.NamedThreadFactory;
 import zhong.snowflake.starter.SnowflakeConfig;
 import zhong.snowflake.starter.SnowflakeProps;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * 通过 RedisLock 锁定 Redis 标志位的雪花算法<p>
+ * 续期使用 {@link #RENEW_SCRIPT} 直接读写 RedisLock 的 key，依赖 RedisLock 以原始字符串在原始 key 上保存 value（SET key value PX），
+ * RedisLock 改变 key 前缀或序列化方式时需要同步修改脚本，测试模块的 RenewScriptTest 在真实 Redis 上验证
+ *
  * @author Zhong
  * @since 0.0.1
  */
 @Component
+@ConditionalOnProperty(prefix = SnowflakeProps.PROPERTIES_PREFIX, name = "mode", havingValue = SnowflakeProps.MODE_SNOWFLAKE, matchIfMissing = true)
 public class RedisSnowflakeIdGenerator implements IdGenerator {
     private static final Logger log = LoggerFactory.getLogger(RedisSnowflakeIdGenerator.class);
 
     private static final String namespace = "snowflake:";
+    private static final String timestampNamespace = namespace + "timestamp:";
+    private static final long TERMINATION_TIMEOUT = 5_000;
+    private static final long ELASTIC_PERIOD = 1_000;
+    private static final long CAPACITY_PER_PERIOD = (SnowflakeIdGenerator.MAX_SEQUENCE + 1L) * ELASTIC_PERIOD;
+    private static final int SCALE_UP_PERIODS = 3;
+    private static final int SCALE_DOWN_PERIODS = 60;
+    private static final SnowflakeIdGenerator[] NO_EXTRAS = new SnowflakeIdGenerator[0];
+    private static final String KEYSPACE_PATTERN = "__keyspace@*__:" + namespace + "*";
+    private static final String KEYSPACE_SEPARATOR = "__:";
+    /**
+     * 逐个 key 在 value 一致时延长时长，返回 {Redis TIME 秒, 微秒, 每个 key 的结果...}；TIME 放在写命令之后，兼容 Redis 5 之前的脚本复制
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local r = {0, 0}\n" +
+                    "for i, k in ipairs(KEYS) do\n" +
+                    "    local e = 0\n" +
+                    "    if redis.call('get', k) == ARGV[1] then e = redis.call('pexpire', k, ARGV[2]) end\n" +
+                    "    r[i + 2] = e\n" +
+                    "end\n" +
+                    "local t = redis.call('time')\n" +
+                    "r[1] = tonumber(t[1])\n" +
+                    "r[2] = tonumber(t[2])\n" +
+                    "return r",
+            List.class);
+    /**
+     * value 一致时记录最后时间戳并把过期时间缩短为 1ms，KEYS={锁, 时间戳}，ARGV={value, 时间戳}，时间戳为空则不记录；
+     * 判断与写入在同一脚本中完成，已失去 flags 的节点不会覆盖新持有者交接的时间戳
+     */
+    static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) ~= ARGV[1] then return 0 end\n" +
+                    "if ARGV[2] ~= '' then redis.call('set', KEYS[2], ARGV[2]) end\n" +
+                    "return redis.call('pexpire', KEYS[1], 1)",
+            Long.class);
 
     private volatile boolean isOpen;
     private ScheduledExecutorService threadPool;
@@ -47,40 +107,202 @@ public class RedisSnowflakeIdGenerator implements IdGenerator {
     private volatile long syncTime;
     private int keepAlive;
     private double factor;
+    private boolean standby;
+    private int maxLeases;
+    private boolean keyspaceNotify;
+    private boolean asyncInit;
+    private int initTimeout;
+    /**
+     * 异步启动时首次获取到 flags 前 getNextId() 在此等待，null 表示同步启动
+     */
+    private volatile CountDownLatch initLatch;
+    private int maxClockSkew;
+    /**
+     * 本机时钟减 Redis TIME 的估计值，null 表示尚未采样
+     */
+    private volatile Long clockSkew;
+    /**
+     * 时钟偏差超过上限，暂停发放 ID
+     */
+    private volatile boolean clockSkewed;
+    /**
+     * 主 flags 丢失通知的次数，延长时长期间收到通知则不能根据延长结果重新打开
+     */
+    private final AtomicLong leaseEpoch = new AtomicLong();
+    /**
+     * 锁定 Redis 标志位使用的 value
+     */
+    private String serverId = SnowflakeConfig.SERVER_UUID;
+    /**
+     * 计算 Redis 标志位租约时长使用的时钟
+     */
+    private Clock clock = Clock.systemUTC();
+    /**
+     * 同一主机多个进程共享的状态，null 表示不共享
+     */
+    private SharedSnowflakeState sharedState;
+    /**
+     * 订阅 Redis keyspace 通知的容器，null 表示未开启
+     */
+    private RedisMessageListenerContainer listenerContainer;
 
     @Autowired
     private SnowflakeProps snowflakeProps;
     @Autowired
     private RedisLock redisLock;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
 
     private volatile IdGenerator proxyObject;
+    /**
+     * 备用 idGenerator，主 flags 丢失时立即切换
+     */
+    private volatile SnowflakeIdGenerator standbyObject;
+    /**
+     * 负载过高时额外锁定的 idGenerator，copy-on-write
+     */
+    private final AtomicReference<SnowflakeIdGenerator[]> extraObjects = new AtomicReference<>(NO_EXTRAS);
+    /**
+     * 本进程用过的 flags 对应的 idGenerator，最多 MAX_FLAGS + 1 个
+     */
+    private final Map<Integer, SnowflakeIdGenerator> usedObjects = new ConcurrentHashMap<>();
+    private final LongAdder exhaustedCount = new LongAdder();
+    private final LongAdder issuedCount = new LongAdder();
+    private int exhaustedPeriods;
+    private int idlePeriods;
 
     @Override
     public Long getNextId() {
-        if (isOpen) {
+        if (!isOpen && !awaitInit()) {
+            return null;
+        }
+        if (!isOpen || clockSkewed) {
+            return null;
+        } else if (maxLeases <= 1) {
             return proxyObject.getNextId();
         } else {
+            final Long id = getNextIdElastic();
+            if (id == null) {
+                exhaustedCount.increment();
+            } else {
+                issuedCount.increment();
+            }
+            return id;
+        }
+    }
+
+    /**
+     * 异步启动尚未获取到 flags 时最多等待 initTimeout
+     *
+     * @return true 已获取到 flags
+     */
+    private boolean awaitInit() {
+        final CountDownLatch latch = initLatch;
+        if (latch == null || latch.getCount() == 0) {
+            return false;
+        }
+        try {
+            return latch.await(initTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return true 持有 flags，可以发放 ID
+     */
+    public boolean isReady() {
+        return isOpen && !clockSkewed;
+    }
+
+    /**
+     * @return 当前持有的 flags，null 表示未持有
+     */
+    public Integer getFlagsValue() {
+        final IdGenerator p = proxyObject;
+        return isOpen && p != null ? ((SnowflakeIdGenerator) p).getFlagsValue() : null;
+    }
+
+    /**
+     * 按线程固定起始 idGenerator，当前毫秒 ID 已达上限时依次尝试其他 idGenerator
+     */
+    private Long getNextIdElastic() {
+        final IdGenerator primary = proxyObject;
+        final SnowflakeIdGenerator[] extras = extraObjects.get();
+        if (primary == null) {
             return null;
         }
+        final int n = extras.length + 1;
+        final int start = (int) (Thread.currentThread().getId() % n);
+        for (int i = 0; i < n; i++) {
+            final int index = (start + i) % n;
+            final Long id = index == 0 ? primary.getNextId() : extras[index - 1].getNextId();
+            if (id != null) {
+                return id;
+            }
+        }
+        return null;
     }
 
     @PostConstruct
     public void init() {
         log.info("init");
         initProp();
+        if (asyncInit) {
+            log.info("异步获取雪花算法 flags，getNextId() 最多等待 {}ms", initTimeout);
+            initLatch = new CountDownLatch(1);
+            initThreadPool();
+            threadPool.execute(this::initAsync);
+            return;
+        }
         boolean shouldStartKeepAliveTask = initIdGenerator(0);
         if (shouldStartKeepAliveTask) {
             initThreadPool();
-            startKeepAliveTask();
+            startTasks();
+        }
+    }
+
+    /**
+     * 异步获取 flags，失败或暂时没有空闲的 flags 时由定时任务继续尝试
+     */
+    private void initAsync() {
+        boolean shouldStartKeepAliveTask = true;
+        try {
+            shouldStartKeepAliveTask = initIdGenerator(1);
+        } catch (Exception e) {
+            log.error("异步获取雪花算法 flags 失败", e);
+        }
+        if (shouldStartKeepAliveTask) {
+            startTasks();
+        } else {
+            threadPool.shutdown();
+        }
+    }
+
+    private void startTasks() {
+        if (standby) {
+            threadPool.execute(this::initStandby);
+        }
+        startKeepAliveTask();
+        if (maxLeases > 1) {
+            threadPool.scheduleWithFixedDelay(this::elasticTask, ELASTIC_PERIOD, ELASTIC_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        if (keyspaceNotify) {
+            startKeyspaceListener();
         }
     }
 
     @PreDestroy
     public void destroy() {
         log.info("destroy");
+        log.info("停止发放 ID");
+        isOpen = false;
+        stopKeyspaceListener();
         log.info("开始 threadPool shutdown");
         if (threadPool == null) {
             log.info("已跳过，原因：threadPool null");
+            closeSharedState();
             return;
         }
         if (threadPool.isShutdown()) {
@@ -88,7 +310,111 @@ public class RedisSnowflakeIdGenerator implements IdGenerator {
             return;
         }
         threadPool.shutdown();
+        try {
+            if (!threadPool.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.info("等待定时任务结束超时");
+            }
+        } catch (InterruptedException e) {
+            log.info("等待定时任务结束被中断", e);
+            Thread.currentThread().interrupt();
+        }
+        // 定时任务可能在 shutdown 前重新打开
+        isOpen = false;
         log.info("结束 threadPool shutdown");
+        releaseFlags();
+        closeSharedState();
+    }
+
+    private void closeSharedState() {
+        if (sharedState == null) {
+            return;
+        }
+        try {
+            sharedState.close();
+            log.info("已关闭共享文件");
+        } catch (IOException e) {
+            log.error("关闭共享文件失败", e);
+        }
+    }
+
+    /**
+     * 记录最后发放 ID 的时间戳并释放 flags，其他节点可以立即复用
+     */
+    private void releaseFlags() {
+        for (SnowflakeIdGenerator e : extraObjects.getAndSet(NO_EXTRAS)) {
+            releaseFlags(e);
+        }
+        final IdGenerator p = proxyObject;
+        if (sharedState != null) {
+            // 主 flags 与同一主机其他进程共享，备用 flags 仍属于当前进程
+            log.info("已跳过释放主 flags，原因：flags 与同一主机其他进程共享");
+        } else if (p != null) {
+            releaseFlags((SnowflakeIdGenerator) p);
+        }
+        final SnowflakeIdGenerator s = standbyObject;
+        if (s != null) {
+            releaseFlags(s.getFlagsValue(), null);
+        }
+    }
+
+    private void releaseFlags(SnowflakeIdGenerator s) {
+        releaseFlags(s.getFlagsValue(), Math.max(s.getTimestampValue(), System.currentTimeMillis()));
+    }
+
+    /**
+     * @param flags         需要释放的 flags
+     * @param lastTimestamp 最后发放 ID 的时间戳，null 则不记录
+     */
+    private void releaseFlags(int flags, Long lastTimestamp) {
+        try {
+            if (lastTimestamp != null) {
+                log.info("记录 flags={} 最后时间戳={}", flags, lastTimestamp);
+            }
+            final Long result = stringRedisTemplate.execute(RELEASE_SCRIPT, Arrays.asList(getLockKey(flags), getTimestampKey(flags)),
+                    serverId, lastTimestamp == null ? "" : String.valueOf(lastTimestamp));
+            log.info("释放 flags={} 成功={}", flags, result != null && result == 1);
+        } catch (Exception e) {
+            log.error("释放 flags=" + flags + " 失败", e);
+        }
+    }
+
+    /**
+     * 当前时间不大于 flags 上一个持有者最后发放 ID 的时间戳时等待<p>
+     * 时间戳来自其他节点的时钟，可能偏差很大或已损坏，等待不超过 maxClockSkew，
+     * 同时不超过租约余量 keepAlive * (factor - 1) 的一半，避免已持有的其他 flags 在等待期间过期
+     *
+     * @param flags 刚获取到的 flags
+     * @return false 需要等待的时间超过上限或时间戳无法解析，调用方应释放该 flags
+     * @throws IllegalStateException 如果等待被中断
+     */
+    private boolean awaitLastTimestamp(int flags) {
+        final String value = stringRedisTemplate.opsForValue().get(getTimestampKey(flags));
+        if (value == null) {
+            return true;
+        }
+        final long wait;
+        try {
+            wait = Long.parseLong(value) - System.currentTimeMillis();
+        } catch (NumberFormatException e) {
+            log.error("flags={} 上一个持有者最后时间戳={} 无法解析，跳过该 flags", flags, value);
+            return false;
+        }
+        if (wait < 0) {
+            return true;
+        }
+        final long maxWait = Math.min(maxClockSkew, (long) (keepAlive * (factor - 1)) / 2);
+        if (wait + 1 > maxWait) {
+            log.info("flags={} 上一个持有者最后时间戳={}，需要等待 {}ms 超过上限 {}ms，跳过该 flags", flags, value, wait + 1, maxWait);
+            return false;
+        }
+        log.info("flags={} 上一个持有者最后时间戳={}，等待 {}ms", flags, value, wait + 1);
+        try {
+            Thread.sleep(wait + 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待 flags=" + flags + " 上一个持有者时间戳被中断", e);
+        }
+        return true;
     }
 
     private void initProp() {
@@ -99,6 +425,35 @@ public class RedisSnowflakeIdGenerator implements IdGenerator {
 
         factor = snowflakeProps.getFactor();
         log.info("init factor: {}", factor);
+
+        standby = snowflakeProps.getStandby();
+        log.info("init standby: {}", standby);
+
+        maxLeases = snowflakeProps.getMaxLeases();
+        log.info("init maxLeases: {}", maxLeases);
+
+        maxClockSkew = snowflakeProps.getMaxClockSkew();
+        log.info("init maxClockSkew: {}", maxClockSkew);
+
+        keyspaceNotify = snowflakeProps.getKeyspaceNotify();
+        log.info("init keyspaceNotify: {}", keyspaceNotify);
+
+        asyncInit = snowflakeProps.getAsyncInit();
+        log.info("init asyncInit: {}", asyncInit);
+
+        initTimeout = snowflakeProps.getInitTimeout();
+        log.info("init initTimeout: {}", initTimeout);
+
+        log.info("init sharedFile: {}", snowflakeProps.getSharedFile());
+        if (snowflakeProps.getSharedFile() != null) {
+            try {
+                sharedState = SharedSnowflakeState.open(new File(snowflakeProps.getSharedFile()));
+            } catch (IOException e) {
+                throw new IllegalStateException("打开共享文件失败：" + snowflakeProps.getSharedFile(), e);
+            }
+            serverId = sharedState.getOwner();
+            log.info("init serverId: {}", serverId);
+        }
     }
 
     /**
@@ -117,10 +472,67 @@ public class RedisSnowflakeIdGenerator implements IdGenerator {
         }
         if (snowflakeProps.getDataCenterId() != null && snowflakeProps.getWorkerId() != null) {
             log.info("指定雪花算法 dataCenterId={} workerId={}", snowflakeProps.getDataCenterId(), snowflakeProps.getWorkerId());
-            doInitIdGenerator(snowflakeProps.getDataCenterId(), snowflakeProps.getWorkerId());
+            doInitIdGenerator(SnowflakeIdGenerator.getFlagsValue(snowflakeProps.getDataCenterId(), snowflakeProps.getWorkerId()));
             return false;
         }
 
+        final Integer sharedFlags = lockSharedFlags();
+        if (sharedFlags != null) {
+            log.info("获取到同一主机其他进程共享的雪花算法 flags={}", sharedFlags);
+            doInitIdGenerator(sharedFlags);
+            return true;
+        }
+
+        final SnowflakeIdGenerator s = standbyObject;
+        final Integer flags = lockFreeFlags(s != null ? s.getFlagsValue() : null);
+        if (flags != null) {
+            log.info("获取到雪花算法 flags={}", flags);
+            doInitIdGenerator(flags);
+            return true;
+        }
+
+        if (stage == 0) {
+            throw new IllegalStateException("获取雪花算法 flags / dataCenterId workerId 失败，原因：Redis 中暂时没有空闲的值！当前 keepAlive 值：" + factor + " x " + keepAlive);
+        } else {
+            log.info("获取雪花算法 flags / dataCenterId workerId 失败，原因：Redis 中暂时没有空闲的值！当前 keepAlive 值：" + factor + " x " + keepAlive);
+        }
+        return true;
+    }
+
+    /**
+     * 延长或锁定共享文件中记录的 flags，同一主机的进程使用相同的 value
+     *
+     * @return null 没有共享的 flags 或已被其他主机占用
+     */
+    private Integer lockSharedFlags() {
+        if (sharedState == null) {
+            return null;
+        }
+        final Integer flags = sharedState.getFlags();
+        if (flags == null) {
+            return null;
+        }
+        final long timeout = (long) (keepAlive * factor);
+        if (redisLock.expire(getLockKey(flags), serverId, timeout, TimeUnit.MILLISECONDS)) {
+            return flags;
+        }
+        // 锁已过期重新获取，期间可能被其他主机使用过
+        if (redisLock.lock(getLockKey(flags), serverId, timeout, TimeUnit.MILLISECONDS)) {
+            if (awaitLastTimestamp(flags)) {
+                return flags;
+            }
+            releaseFlags(flags, null);
+        }
+        return null;
+    }
+
+    /**
+     * 遍历 Redis 获取空闲的 flags
+     *
+     * @param excludeFlags 跳过的 flags，可以为 null
+     * @return null 暂时没有空闲的 flags
+     */
+    private Integer lockFreeFlags(Integer excludeFlags) {
         int minDataCenterId = SnowflakeIdGenerator.MIN_DATA_CENTER_ID;
         int maxDataCenterId = SnowflakeIdGenerator.MAX_DATA_CENTER_ID;
         if (snowflakeProps.getDataCenterId() != null) {
@@ -133,89 +545,517 @@ public class RedisSnowflakeIdGenerator implements IdGenerator {
         for (int i = minDataCenterId; i <= maxDataCenterId; i++) {
             for (int j = minWorkerId; j <= maxWorkerId; j++) {
                 final int flags = SnowflakeIdGenerator.getFlagsValue(i, j);
-                final boolean success = redisLock.lock(getLockKey(flags), SnowflakeConfig.SERVER_UUID, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
+                if (excludeFlags != null && excludeFlags == flags) {
+                    continue;
+                }
+                final boolean success = redisLock.lock(getLockKey(flags), serverId, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
                 if (success) {
-                    log.info("获取到雪花算法 flags={}", flags);
-                    doInitIdGenerator(flags);
-                    return true;
+                    if (awaitLastTimestamp(flags)) {
+                        return flags;
+                    }
+                    releaseFlags(flags, null);
                 }
             }
         }
+        return null;
+    }
 
-        if (stage == 0) {
-            throw new IllegalStateException("获取雪花算法 flags / dataCenterId workerId 失败，原因：Redis 中暂时没有空闲的值！当前 keepAlive 值：" + factor + " x " + keepAlive);
-        } else {
-            log.info("获取雪花算法 flags / dataCenterId workerId 失败，原因：Redis 中暂时没有空闲的值！当前 keepAlive 值：" + factor + " x " + keepAlive);
+    /**
+     * 获取备用 flags，只在定时任务线程中执行
+     */
+    private void initStandby() {
+        try {
+            if (!isOpen || standbyObject != null) {
+                log.info("已跳过获取备用 flags，isOpen={} standbyObject={}", isOpen, standbyObject);
+                return;
+            }
+            log.info("开始获取备用 flags");
+            final Integer flags = lockFreeFlags(((SnowflakeIdGenerator) proxyObject).getFlagsValue());
+            if (flags == null) {
+                log.info("获取备用 flags 失败，原因：Redis 中暂时没有空闲的值！");
+                return;
+            }
+            log.info("获取到备用 flags={}", flags);
+            standbyObject = getSnowflakeIdGenerator(flags);
+        } catch (Exception e) {
+            log.error("获取备用 flags 失败", e);
+        }
+    }
+
+    /**
+     * 主 flags 丢失时切换到备用 flags
+     *
+     * @return true 切换成功
+     */
+    private boolean switchToStandby() {
+        final SnowflakeIdGenerator s = standbyObject;
+        if (s == null) {
+            return false;
+        }
+        standbyObject = null;
+        final boolean expireSuccess = redisLock.expire(getLockKey(s.getFlagsValue()), serverId, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
+        log.info("延长备用 flags={} 时长成功={}", s.getFlagsValue(), expireSuccess);
+        if (!expireSuccess) {
+            return false;
         }
+        proxyObject = s;
+        if (sharedState != null) {
+            sharedState.setFlags(s.getFlagsValue());
+        }
+        isOpen = true;
+        syncTime = clock.millis();
+        log.info("切换到备用 flags={}", s.getFlagsValue());
         return true;
     }
 
+    /**
+     * 延长备用 flags 时长，备用 flags 不存在或已丢失则异步补充
+     *
+     * @param renewed 本次定时任务中已延长的 flags 及结果，没有的单独延长
+     */
+    private void keepAliveStandby(Map<Integer, Boolean> renewed) {
+        if (!standby) {
+            return;
+        }
+        final SnowflakeIdGenerator s = standbyObject;
+        if (s != null) {
+            final Boolean r = renewed.get(s.getFlagsValue());
+            final boolean expireSuccess = r != null ? r
+                    : redisLock.expire(getLockKey(s.getFlagsValue()), serverId, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
+            log.info("延长备用 flags={} 时长成功={}", s.getFlagsValue(), expireSuccess);
+            if (expireSuccess) {
+                return;
+            }
+            standbyObject = null;
+        }
+        threadPool.execute(this::initStandby);
+    }
+
     private void doInitIdGenerator(int flags) {
-        proxyObject = new SnowflakeIdGenerator(flags);
+        proxyObject = getSnowflakeIdGenerator(flags);
+        if (sharedState != null) {
+            sharedState.setFlags(flags);
+        }
         isOpen = true;
-        syncTime = System.currentTimeMillis();
+        syncTime = clock.millis();
+        final CountDownLatch latch = initLatch;
+        if (latch != null) {
+            latch.countDown();
+        }
     }
 
-    private void doInitIdGenerator(int dataCenterId, int workerId) {
-        proxyObject = new SnowflakeIdGenerator(dataCenterId, workerId);
-        isOpen = true;
-        syncTime = System.currentTimeMillis();
+    private SnowflakeIdGenerator getSnowflakeIdGenerator(int flags) {
+        if (sharedState != null) {
+            return new MappedSnowflakeIdGenerator(flags, sharedState);
+        }
+        return getLocalIdGenerator(flags);
+    }
+
+    /**
+     * 锁过期后没有记录最后时间戳，重新获取到本进程用过的 flags 时必须复用原来的 idGenerator，
+     * 延续上一次发放的时间戳与序号，新建的 idGenerator 会在同一毫秒内重复发放相同的序号
+     */
+    private SnowflakeIdGenerator getLocalIdGenerator(int flags) {
+        return usedObjects.computeIfAbsent(flags, SnowflakeIdGenerator::new);
     }
 
     private void initThreadPool() {
         log.info("初始化线程池");
-        threadPool = Executors.newScheduledThreadPool(1, new NamedThreadFactory("雪花算法定时任务"));
+        threadPool = Executors.newScheduledThreadPool(1, Threads.newThreadFactory("雪花算法定时任务"));
     }
 
     private void startKeepAliveTask() {
-        threadPool.scheduleAtFixedRate(() -> {
-            log.info("开始延长雪花算法时长定时任务");
-            if (isTaskRunning) {
-                log.info("已跳过，原因：上一个任务未结束");
-                return;
-            }
-            try {
-                isTaskRunning = true;
-                final long now = System.currentTimeMillis();
-                log.info("上一次成功时间：{}", syncTime);
-                log.info("当前打开状态 isOpen={}", isOpen);
-                if (isOpen) {
-                    final int flags = ((SnowflakeIdGenerator) proxyObject).getFlagsValue();
-                    log.info("当前 flags={}", flags);
-
-                    final boolean expireSuccess = redisLock.expire(getLockKey(flags), SnowflakeConfig.SERVER_UUID, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
-                    log.info("延长时长成功={}", expireSuccess);
-                    if (expireSuccess) {
-                        syncTime = now;
+        threadPool.scheduleAtFixedRate(this::keepAliveTask, keepAlive, keepAlive, TimeUnit.MILLISECONDS);
+    }
+
+    private void keepAliveTask() {
+        log.info("开始延长雪花算法时长定时任务");
+        if (isTaskRunning) {
+            log.info("已跳过，原因：上一个任务未结束");
+            return;
+        }
+        try {
+            isTaskRunning = true;
+            final long now = clock.millis();
+            log.info("上一次成功时间：{}", syncTime);
+            log.info("当前打开状态 isOpen={}", isOpen);
+            Map<Integer, Boolean> renewed = Collections.emptyMap();
+            if (isOpen) {
+                final int flags = ((SnowflakeIdGenerator) proxyObject).getFlagsValue();
+                log.info("当前 flags={}", flags);
+
+                final long epoch = leaseEpoch.get();
+                renewed = renewAndSampleTime(getLeases(flags));
+                final boolean expireSuccess = renewed.get(flags);
+                log.info("延长时长成功={}", expireSuccess);
+                if (expireSuccess) {
+                    syncTime = now;
+                    if (leaseEpoch.get() == epoch) {
                         isOpen = true;
                     } else {
-                        isOpen = false;
-                        log.info("开始尝试重置");
-                        Boolean resetSuccess = redisLock.lock(getLockKey(flags), SnowflakeConfig.SERVER_UUID, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
-                        log.info("尝试重置成功={}", resetSuccess);
-                        if (resetSuccess) {
-                            syncTime = now;
-                            isOpen = true;
-                        } else {
-                            log.info("重置 proxyObject=NullIdGenerator");
-                            proxyObject = null;
-                            log.info("开始尝试遍历获取");
-                            initIdGenerator(1);
-                        }
+                        log.info("延长时长期间收到 flags={} 丢失通知，保持停止发放 ID", flags);
                     }
                 } else {
-                    log.info("开始尝试遍历获取");
-                    initIdGenerator(1);
+                    isOpen = false;
+                    log.info("开始尝试重置");
+                    Boolean resetSuccess = redisLock.lock(getLockKey(flags), serverId, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
+                    log.info("尝试重置成功={}", resetSuccess);
+                    if (resetSuccess) {
+                        syncTime = now;
+                        isOpen = true;
+                    } else if (switchToStandby()) {
+                        log.info("已切换到备用 flags");
+                    } else {
+                        log.info("重置 proxyObject=NullIdGenerator");
+                        proxyObject = null;
+                        log.info("开始尝试遍历获取");
+                        initIdGenerator(1);
+                    }
+                }
+            } else if (renewPrimary(now)) {
+                log.info("原主 flags 仍然有效，恢复发放 ID");
+            } else if (switchToStandby()) {
+                log.info("已切换到备用 flags");
+            } else {
+                log.info("开始尝试遍历获取");
+                initIdGenerator(1);
+            }
+            keepAliveStandby(renewed);
+            keepAliveExtras(renewed);
+        } catch (Exception e) {
+            log.error("雪花算法定时任务失败", e);
+            closeIfLeaseExpiring();
+        } finally {
+            isTaskRunning = false;
+        }
+    }
+
+    /**
+     * @param flags 主 flags
+     * @return 主 flags、备用 flags、额外 flags，主 flags 在第一个
+     */
+    private int[] getLeases(int flags) {
+        final SnowflakeIdGenerator s = standbyObject;
+        final SnowflakeIdGenerator[] extras = extraObjects.get();
+        final int[] leases = new int[1 + (s != null ? 1 : 0) + extras.length];
+        int i = 0;
+        leases[i++] = flags;
+        if (s != null) {
+            leases[i++] = s.getFlagsValue();
+        }
+        for (SnowflakeIdGenerator e : extras) {
+            leases[i++] = e.getFlagsValue();
+        }
+        return leases;
+    }
+
+    /**
+     * 一次调用延长主、备用、额外 flags 的时长，同时采样 Redis TIME 估算本机时钟偏差
+     *
+     * @param leases 需要延长的 flags
+     * @return 每个 flags 延长是否成功
+     */
+    private Map<Integer, Boolean> renewAndSampleTime(int[] leases) {
+        final List<String> keys = new ArrayList<>(leases.length);
+        for (int e : leases) {
+            keys.add(getLockKey(e));
+        }
+        final long start = clock.millis();
+        final List<?> result = stringRedisTemplate.execute(RENEW_SCRIPT, keys, serverId, String.valueOf((long) (keepAlive * factor)));
+        final long end = clock.millis();
+        final long redisTime = (Long) result.get(0) * 1000 + (Long) result.get(1) / 1000;
+        // 假设请求、响应耗时相同，Redis 执行 TIME 的时刻为本机 start、end 的中点，误差不超过往返耗时的一半
+        final long skew = (start + end) / 2 - redisTime;
+        final long error = (end - start + 1) / 2;
+        clockSkew = skew;
+        final boolean skewed = Math.abs(skew) - error > maxClockSkew;
+        if (skewed != clockSkewed) {
+            log.info("时钟偏差={}ms，往返耗时={}ms，上限={}ms，{}发放 ID", skew, end - start, maxClockSkew, skewed ? "暂停" : "恢复");
+        }
+        clockSkewed = skewed;
+        final Map<Integer, Boolean> renewed = new HashMap<>(leases.length * 2);
+        for (int i = 0; i < leases.length; i++) {
+            renewed.put(leases[i], (Long) result.get(i + 2) == 1L);
+        }
+        return renewed;
+    }
+
+    /**
+     * @return 本机时钟减 Redis TIME 的估计值，单位：ms，null 表示尚未采样
+     */
+    public Long getClockSkew() {
+        return clockSkew;
+    }
+
+    /**
+     * @return true 时钟偏差超过上限，暂停发放 ID
+     */
+    public boolean isClockSkewed() {
+        return clockSkewed;
+    }
+
+    /**
+     * 延长时长结果未知时，如果下一次定时任务前租约可能已过期则停止发放 ID，避免与其他节点重复持有 flags；
+     * 额外 flags 尽量释放，主 flags 保留到下一次定时任务尝试恢复
+     */
+    private void closeIfLeaseExpiring() {
+        if (isOpen && clock.millis() + keepAlive >= syncTime + (long) (keepAlive * factor)) {
+            log.info("租约可能在下一次定时任务前过期，上一次成功时间：{}，停止发放 ID", syncTime);
+            isOpen = false;
+            for (SnowflakeIdGenerator e : extraObjects.getAndSet(NO_EXTRAS)) {
+                releaseFlags(e);
+            }
+        }
+    }
+
+    /**
+     * 停止发放 ID 后原主 flags 的租约可能仍然有效，例如延长时长的响应丢失，切换到备用 flags 前先尝试延长
+     *
+     * @param now 本次定时任务开始时间
+     * @return true 原主 flags 仍由当前节点持有，已恢复发放 ID
+     */
+    private boolean renewPrimary(long now) {
+        final IdGenerator p = proxyObject;
+        if (p == null) {
+            return false;
+        }
+        final int flags = ((SnowflakeIdGenerator) p).getFlagsValue();
+        final long epoch = leaseEpoch.get();
+        final boolean expireSuccess = redisLock.expire(getLockKey(flags), serverId, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
+        log.info("延长原主 flags={} 时长成功={}", flags, expireSuccess);
+        if (!expireSuccess || leaseEpoch.get() != epoch) {
+            return false;
+        }
+        syncTime = now;
+        isOpen = true;
+        return true;
+    }
+
+    /**
+     * 与主 flags 在同一次定时任务中延长额外 flags 的时长，失败的直接丢弃
+     *
+     * @param renewed 本次定时任务中已延长的 flags 及结果，没有的单独延长
+     */
+    private void keepAliveExtras(Map<Integer, Boolean> renewed) {
+        final SnowflakeIdGenerator[] extras = extraObjects.get();
+        if (extras.length == 0) {
+            return;
+        }
+        if (!isOpen) {
+            log.info("主 flags 不可用，释放 {} 个额外 flags", extras.length);
+            for (SnowflakeIdGenerator e : extraObjects.getAndSet(NO_EXTRAS)) {
+                releaseFlags(e);
+            }
+            return;
+        }
+        for (SnowflakeIdGenerator e : extras) {
+            boolean expireSuccess = false;
+            try {
+                final Boolean r = renewed.get(e.getFlagsValue());
+                expireSuccess = r != null ? r : redisLock.expire(getLockKey(e.getFlagsValue()), serverId, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
+                log.info("延长额外 flags={} 时长成功={}", e.getFlagsValue(), expireSuccess);
+            } catch (Exception ex) {
+                log.error("延长额外 flags=" + e.getFlagsValue() + " 时长失败", ex);
+            }
+            if (!expireSuccess) {
+                removeExtra(e.getFlagsValue());
+            }
+        }
+    }
+
+    private void addExtra(SnowflakeIdGenerator e) {
+        extraObjects.updateAndGet(extras -> {
+            final SnowflakeIdGenerator[] newExtras = Arrays.copyOf(extras, extras.length + 1);
+            newExtras[extras.length] = e;
+            return newExtras;
+        });
+    }
+
+    /**
+     * @return 被移除的 idGenerator，null 表示不存在
+     */
+    private SnowflakeIdGenerator removeExtra(int flags) {
+        for (; ; ) {
+            final SnowflakeIdGenerator[] extras = extraObjects.get();
+            int index = -1;
+            for (int i = 0; i < extras.length; i++) {
+                if (extras[i].getFlagsValue() == flags) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return null;
+            }
+            final SnowflakeIdGenerator[] newExtras = new SnowflakeIdGenerator[extras.length - 1];
+            System.arraycopy(extras, 0, newExtras, 0, index);
+            System.arraycopy(extras, index + 1, newExtras, index, extras.length - index - 1);
+            if (extraObjects.compareAndSet(extras, newExtras)) {
+                return extras[index];
+            }
+        }
+    }
+
+    /**
+     * 连续 SCALE_UP_PERIODS 个周期出现 ID 达到上限则额外锁定一个 flags，
+     * 连续 SCALE_DOWN_PERIODS 个周期负载低于少一个 flags 时容量的一半则释放一个 flags
+     */
+    private void elasticTask() {
+        try {
+            final long exhausted = exhaustedCount.sumThenReset();
+            final long issued = issuedCount.sumThenReset();
+            if (!isOpen) {
+                exhaustedPeriods = idlePeriods = 0;
+                return;
+            }
+            final SnowflakeIdGenerator[] extras = extraObjects.get();
+            exhaustedPeriods = exhausted > 0 ? exhaustedPeriods + 1 : 0;
+            idlePeriods = extras.length > 0 && issued < extras.length * CAPACITY_PER_PERIOD / 2 ? idlePeriods + 1 : 0;
+            if (exhaustedPeriods >= SCALE_UP_PERIODS && extras.length + 1 < maxLeases) {
+                exhaustedPeriods = 0;
+                final Integer flags = lockFreeFlags(null);
+                if (flags == null) {
+                    log.info("额外锁定 flags 失败，原因：Redis 中暂时没有空闲的值！");
+                    return;
+                }
+                addExtra(getLocalIdGenerator(flags));
+                log.info("额外锁定 flags={}，当前 flags 数量={}", flags, extraObjects.get().length + 1);
+            } else if (idlePeriods >= SCALE_DOWN_PERIODS) {
+                idlePeriods = 0;
+                final SnowflakeIdGenerator e = removeExtra(extras[extras.length - 1].getFlagsValue());
+                if (e != null) {
+                    log.info("释放额外 flags={}，当前 flags 数量={}", e.getFlagsValue(), extraObjects.get().length + 1);
+                    releaseFlags(e);
                 }
-            } catch (Exception e) {
-                log.error("雪花算法定时任务失败", e);
-            } finally {
-                isTaskRunning = false;
             }
-        }, keepAlive, keepAlive, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.error("弹性扩缩容任务失败", e);
+        }
+    }
+
+    private void startKeyspaceListener() {
+        log.info("开始订阅 Redis keyspace 通知：{}", KEYSPACE_PATTERN);
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(stringRedisTemplate.getConnectionFactory());
+        listenerContainer.addMessageListener(this::onKeyspaceEvent, new PatternTopic(KEYSPACE_PATTERN));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    private void stopKeyspaceListener() {
+        if (listenerContainer == null) {
+            return;
+        }
+        log.info("停止订阅 Redis keyspace 通知");
+        try {
+            listenerContainer.destroy();
+        } catch (Exception e) {
+            log.error("停止订阅 Redis keyspace 通知失败", e);
+        }
+    }
+
+    /**
+     * 持有的 flags 过期、被删除时立即停止使用并重新获取；被覆盖时先校验 value，定时任务仍作为兜底
+     */
+    private void onKeyspaceEvent(Message message, byte[] pattern) {
+        final String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        final String event = new String(message.getBody(), StandardCharsets.UTF_8);
+        final int index = channel.indexOf(KEYSPACE_SEPARATOR);
+        if (index < 0) {
+            return;
+        }
+        final String key = channel.substring(index + KEYSPACE_SEPARATOR.length());
+        final int flags;
+        try {
+            flags = Integer.parseInt(key.substring(namespace.length()));
+        } catch (RuntimeException e) {
+            // 时间戳等其他 key
+            return;
+        }
+        if (!isHeld(flags)) {
+            return;
+        }
+        log.info("收到 flags={} keyspace 事件={}", flags, event);
+        try {
+            switch (event) {
+                case "expired":
+                case "evicted":
+                case "del":
+                    onLeaseLost(flags);
+                    break;
+                case "set":
+                    // 自己重置锁也会触发 set，需要校验 value
+                    threadPool.execute(() -> verifyLease(flags));
+                    break;
+                default:
+                    break;
+            }
+        } catch (Exception e) {
+            log.error("处理 flags=" + flags + " keyspace 事件失败", e);
+        }
+    }
+
+    private boolean isHeld(int flags) {
+        final IdGenerator p = proxyObject;
+        if (p != null && ((SnowflakeIdGenerator) p).getFlagsValue() == flags) {
+            return true;
+        }
+        final SnowflakeIdGenerator s = standbyObject;
+        if (s != null && s.getFlagsValue() == flags) {
+            return true;
+        }
+        for (SnowflakeIdGenerator e : extraObjects.get()) {
+            if (e.getFlagsValue() == flags) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void verifyLease(int flags) {
+        try {
+            if (!isHeld(flags)) {
+                return;
+            }
+            final boolean expireSuccess = redisLock.expire(getLockKey(flags), serverId, (long) (keepAlive * factor), TimeUnit.MILLISECONDS);
+            log.info("校验 flags={} 持有者成功={}", flags, expireSuccess);
+            if (!expireSuccess) {
+                onLeaseLost(flags);
+            }
+        } catch (Exception e) {
+            log.error("校验 flags=" + flags + " 持有者失败", e);
+        }
+    }
+
+    /**
+     * 主 flags 丢失时停止发放 ID 并立即执行定时任务，备用、额外 flags 丢失时直接丢弃
+     */
+    private void onLeaseLost(int flags) {
+        final IdGenerator p = proxyObject;
+        if (p != null && ((SnowflakeIdGenerator) p).getFlagsValue() == flags) {
+            log.info("主 flags={} 已丢失，停止发放 ID", flags);
+            leaseEpoch.incrementAndGet();
+            isOpen = false;
+            threadPool.execute(this::keepAliveTask);
+            return;
+        }
+        final SnowflakeIdGenerator s = standbyObject;
+        if (s != null && s.getFlagsValue() == flags) {
+            log.info("备用 flags={} 已丢失", flags);
+            standbyObject = null;
+            threadPool.execute(this::initStandby);
+            return;
+        }
+        if (removeExtra(flags) != null) {
+            log.info("额外 flags={} 已丢失", flags);
+        }
     }
 
     private String getLockKey(int flags) {
         return namespace + flags;
     }
+
+    private String getTimestampKey(int flags) {
+        return timestampNamespace + flags;
+    }
 }
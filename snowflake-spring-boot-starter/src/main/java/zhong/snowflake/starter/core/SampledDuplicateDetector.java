@@ -0,0 +1,230 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * 抽样重复 ID 检测，装饰其他 {@link IdGenerator}<p>
+ * 按 ID 的哈希值抽样，同一个 ID 重复发放时一定会被再次抽中；抽中的 ID 写入按时间窗口轮换的布隆过滤器，
+ * 当前窗口与上一个窗口中已存在则视为重复<p>
+ * 过滤器共 3 代，每代 bits 位，内存不超过 3 * bits / 8 字节；每代最多写入 bits / 64 个 ID，误报率不超过约 5e-7，
+ * 超过后只检测不写入，之后抽中的 ID 再次重复时无法检测，打印 error 日志并计入 {@link #getSaturatedCount()}，
+ * 可以通过 {@link #getBits(long)} 按每个窗口预计抽中的 ID 数量计算 bits
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+public class SampledDuplicateDetector implements IdGenerator {
+    private static final Logger log = LoggerFactory.getLogger(SampledDuplicateDetector.class);
+
+    public static final int DEFAULT_BITS = 1 << 20;
+    public static final int MAX_BITS = 1 << 28;
+    private static final int GENERATIONS = 3;
+    private static final int HASHES = 6;
+    private static final int BITS_PER_ID = 64;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final IdGenerator delegate;
+    private final long sampleMask;
+    private final long window;
+    private final int bits;
+    private final int bitMask;
+    private final int capacity;
+    private final AtomicReferenceArray<Generation> generations = new AtomicReferenceArray<>(GENERATIONS);
+    private final LongConsumer listener;
+    private final LongAdder sampledCount = new LongAdder();
+    private final LongAdder duplicateCount = new LongAdder();
+    private final LongAdder saturatedCount = new LongAdder();
+
+    /**
+     * @param delegate 被检测的 idGenerator
+     * @param sample   每 sample 个 ID 抽样 1 个，必须是 2 的幂
+     * @param window   时间窗口，单位：ms，第一次抽中时过滤器未写满的 ID，间隔小于 window 重复时一定可以被检测到
+     * @param bits     每代过滤器的位数，必须是 2 的幂，范围 [64, {@link #MAX_BITS}]
+     * @param listener 检测到重复时回调，可以为 null
+     */
+    public SampledDuplicateDetector(IdGenerator delegate, int sample, long window, int bits, LongConsumer listener) {
+        if (sample <= 0 || Integer.bitCount(sample) != 1) {
+            throw new IllegalArgumentException("sample 无效：" + sample + "，必须是 2 的幂");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window 无效：" + window);
+        }
+        if (bits < BITS_PER_ID || bits > MAX_BITS || Integer.bitCount(bits) != 1) {
+            throw new IllegalArgumentException("bits 无效：" + bits + "，必须是 2 的幂，范围 [" + BITS_PER_ID + ", " + MAX_BITS + "]");
+        }
+        this.delegate = delegate;
+        this.sampleMask = sample == 1 ? 0 : -1L << (Long.SIZE - Integer.numberOfTrailingZeros(sample));
+        this.window = window;
+        this.bits = bits;
+        this.bitMask = bits - 1;
+        this.capacity = bits / BITS_PER_ID;
+        this.listener = listener;
+        for (int i = 0; i < GENERATIONS; i++) {
+            generations.set(i, new Generation(-1, 0));
+        }
+    }
+
+    /**
+     * 计算每个窗口写入 capacity 个 ID 所需的过滤器位数
+     *
+     * @param capacity 每个窗口预计抽中的 ID 数量
+     * @return 不小于 capacity * 64 的 2 的幂，超过 {@link #MAX_BITS} 时返回 {@link #MAX_BITS}
+     */
+    public static int getBits(long capacity) {
+        if (capacity > MAX_BITS / BITS_PER_ID) {
+            log.error("每个窗口预计抽中 {} 个 ID，超过过滤器容量上限 {}，超出部分只检测不写入", capacity, MAX_BITS / BITS_PER_ID);
+            return MAX_BITS;
+        }
+        final int required = (int) Math.max(capacity, 1) * BITS_PER_ID;
+        return Integer.bitCount(required) == 1 ? required : Integer.highestOneBit(required) << 1;
+    }
+
+    @Override
+    public Long getNextId() {
+        final Long id = delegate.getNextId();
+        if (id != null && ((id * GOLDEN_GAMMA) & sampleMask) == 0) {
+            check(id);
+        }
+        return id;
+    }
+
+    /**
+     * @return 抽样检测的 ID 数量
+     */
+    public long getSampledCount() {
+        return sampledCount.sum();
+    }
+
+    /**
+     * @return 检测到的重复 ID 数量
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.sum();
+    }
+
+    /**
+     * @return 过滤器写满后未写入的 ID 数量，这些 ID 再次重复时无法检测
+     */
+    public long getSaturatedCount() {
+        return saturatedCount.sum();
+    }
+
+    private void check(long id) {
+        sampledCount.increment();
+        final long w = System.currentTimeMillis() / window;
+        final Generation current = rotate(w);
+        final Generation previous = generations.get((int) ((w - 1) % GENERATIONS));
+        final long h = mix(id);
+        final int h1 = (int) h;
+        final int h2 = (int) (h >>> 32) | 1;
+        if (contains(current, h1, h2) || (previous.window == w - 1 && contains(previous, h1, h2))) {
+            duplicateCount.increment();
+            log.error("检测到疑似重复 ID={}", id);
+            if (listener != null) {
+                listener.accept(id);
+            }
+            return;
+        }
+        final long count = current.count.getAndIncrement();
+        if (count < capacity) {
+            add(current, h1, h2);
+            return;
+        }
+        saturatedCount.increment();
+        if (count == capacity) {
+            log.error("时间窗口内抽中的 ID 超过过滤器容量 {}，本窗口之后抽中的 ID 只检测不写入，请调大 duplicate-rate 或 duplicate-sample", capacity);
+        }
+    }
+
+    /**
+     * 切换到窗口 w 对应的一代过滤器，第一个进入新窗口的线程换入新的过滤器，不清空其他线程可能正在写入的旧过滤器
+     *
+     * @return 当前代
+     */
+    private Generation rotate(long w) {
+        final int g = (int) (w % GENERATIONS);
+        final Generation old = generations.get(g);
+        if (old.window >= w) {
+            return old;
+        }
+        final Generation generation = new Generation(w, bits / Long.SIZE);
+        if (generations.compareAndSet(g, old, generation)) {
+            return generation;
+        }
+        return generations.get(g);
+    }
+
+    private boolean contains(Generation g, int h1, int h2) {
+        final AtomicLongArray bits = g.bits;
+        for (int i = 0; i < HASHES; i++) {
+            final int index = (h1 + i * h2) & bitMask;
+            if ((bits.get(index >>> 6) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(Generation g, int h1, int h2) {
+        final AtomicLongArray bits = g.bits;
+        for (int i = 0; i < HASHES; i++) {
+            final int index = (h1 + i * h2) & bitMask;
+            final long bit = 1L << index;
+            for (; ; ) {
+                final long old = bits.get(index >>> 6);
+                if ((old & bit) != 0 || bits.compareAndSet(index >>> 6, old, old | bit)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * MurmurHash3 fmix64
+     */
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB93FE1A85EC3L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /**
+     * 一个时间窗口的过滤器，窗口切换时整体替换
+     */
+    private static final class Generation {
+        private final long window;
+        private final AtomicLongArray bits;
+        private final AtomicLong count = new AtomicLong();
+
+        private Generation(long window, int length) {
+            this.window = window;
+            this.bits = new AtomicLongArray(length);
+        }
+    }
+}
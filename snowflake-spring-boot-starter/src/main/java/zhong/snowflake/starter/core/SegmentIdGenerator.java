@@ -0,0 +1,280 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zhong.redis.lock.starter.utils.NamedThreadFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 号段模式<p>
+ * 从数据库表分配号段 (max_id - step, max_id]，在内存中递增发放，当前号段使用超过 10% 时异步加载下一个号段
+ * <pre>
+ * CREATE TABLE snowflake_segment (
+ *     biz_tag VARCHAR(128) NOT NULL PRIMARY KEY,
+ *     max_id  BIGINT       NOT NULL
+ * );
+ * </pre>
+ * 步长根据号段消耗速度调整，目标是每 duration 时长加载一次号段
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+public class SegmentIdGenerator implements IdGenerator {
+    private static final Logger log = LoggerFactory.getLogger(SegmentIdGenerator.class);
+
+    public static final int MIN_STEP = 1;
+    public static final int MAX_STEP = 1_000_000;
+    private static final double PRELOAD_RATIO = 0.1;
+    private static final int MAX_STEP_GROWTH = 10;
+    private static final long LOAD_TIMEOUT = 3_000;
+    private static final int MAX_LOAD_ATTEMPTS = 2;
+
+    private final DataSource dataSource;
+    private final String table;
+    private final String bizTag;
+    private final int minStep;
+    private final long duration;
+    private final ExecutorService threadPool;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong loadCount = new AtomicLong();
+
+    private volatile Segment current;
+    private volatile CompletableFuture<Segment> nextSegment;
+    private int step;
+    private long lastLoadTime;
+
+    /**
+     * @param dataSource 数据源
+     * @param table      号段表名
+     * @param bizTag     业务标识
+     * @param step       初始步长，同时也是最小步长
+     * @param duration   期望的号段加载间隔，单位：ms
+     */
+    public SegmentIdGenerator(DataSource dataSource, String table, String bizTag, int step, long duration) {
+        if (step < MIN_STEP || step > MAX_STEP) {
+            throw new IllegalArgumentException("step 无效：" + step + "，参考值 [" + MIN_STEP + ", " + MAX_STEP + "]");
+        }
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration 无效：" + duration);
+        }
+        this.dataSource = dataSource;
+        this.table = table;
+        this.bizTag = bizTag;
+        this.minStep = this.step = step;
+        this.duration = duration;
+        this.threadPool = Executors.newSingleThreadExecutor(new NamedThreadFactory("号段加载"));
+    }
+
+    @Override
+    public Long getNextId() {
+        for (; ; ) {
+            final Segment s = current;
+            if (s != null) {
+                final long id = s.value.getAndIncrement();
+                if (id <= s.max) {
+                    if (nextSegment == null && id - s.min >= s.step * PRELOAD_RATIO) {
+                        preload();
+                    }
+                    return id;
+                }
+            }
+            if (!switchSegment(s)) {
+                return null;
+            }
+        }
+    }
+
+    public void shutdown() {
+        threadPool.shutdown();
+    }
+
+    /**
+     * @return 加载号段的次数
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    public synchronized int getStep() {
+        return step;
+    }
+
+    private void preload() {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (nextSegment == null) {
+                nextSegment = CompletableFuture.supplyAsync(this::loadSegment, threadPool);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前号段已用完，切换到下一个号段<p>
+     * 预加载失败时同步加载；预加载超时时保留，下次切换时继续使用，避免丢弃已分配的号段
+     *
+     * @param exhausted 已用完的号段，可能为 null
+     * @return false 加载号段失败
+     */
+    private boolean switchSegment(Segment exhausted) {
+        lock.lock();
+        try {
+            if (current != exhausted) {
+                // 其他线程已切换
+                return true;
+            }
+            final CompletableFuture<Segment> f = nextSegment;
+            if (f != null) {
+                try {
+                    current = f.get(LOAD_TIMEOUT, TimeUnit.MILLISECONDS);
+                    nextSegment = null;
+                    return true;
+                } catch (ExecutionException e) {
+                    log.error("预加载号段失败，bizTag={}，开始同步加载", bizTag, e.getCause());
+                    nextSegment = null;
+                }
+            }
+            current = loadSegment();
+            return true;
+        } catch (InterruptedException e) {
+            log.error("加载号段被中断，bizTag={}", bizTag, e);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException e) {
+            log.error("预加载号段超时，bizTag={}，保留预加载结果", bizTag);
+            return false;
+        } catch (RuntimeException e) {
+            log.error("加载号段失败，bizTag={}", bizTag, e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment loadSegment() {
+        final int step = nextStep();
+        for (int i = 1; ; i++) {
+            try {
+                return loadSegment(step);
+            } catch (SQLException e) {
+                if (i >= MAX_LOAD_ATTEMPTS) {
+                    throw new IllegalStateException("加载号段失败，bizTag=" + bizTag, e);
+                }
+                log.info("加载号段失败，bizTag={}，开始重试", bizTag, e);
+            }
+        }
+    }
+
+    private Segment loadSegment(int step) throws SQLException {
+        try (Connection c = dataSource.getConnection()) {
+            final boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                final long maxId = allocate(c, step);
+                c.commit();
+                loadCount.incrementAndGet();
+                log.info("加载号段 bizTag={} step={} maxId={}", bizTag, step, maxId);
+                return new Segment(maxId - step + 1, maxId);
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * @return 分配后的 max_id
+     */
+    private long allocate(Connection c, int step) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement("UPDATE " + table + " SET max_id = max_id + ? WHERE biz_tag = ?")) {
+            ps.setLong(1, step);
+            ps.setString(2, bizTag);
+            if (ps.executeUpdate() == 0) {
+                // 第一次使用，并发插入时主键冲突，重试时走 UPDATE
+                try (PreparedStatement insert = c.prepareStatement("INSERT INTO " + table + " (biz_tag, max_id) VALUES (?, ?)")) {
+                    insert.setString(1, bizTag);
+                    insert.setLong(2, step);
+                    insert.executeUpdate();
+                }
+                return step;
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement("SELECT max_id FROM " + table + " WHERE biz_tag = ?")) {
+            ps.setString(1, bizTag);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("号段不存在，bizTag=" + bizTag);
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * 根据上一个号段的消耗时长调整步长：消耗过快则增大（每次最多 10 倍），消耗过慢则减半
+     */
+    private synchronized int nextStep() {
+        final long now = System.currentTimeMillis();
+        if (lastLoadTime != 0) {
+            final long elapsed = Math.max(now - lastLoadTime, 1);
+            if (elapsed < duration) {
+                step = (int) Math.min(Math.min((long) step * MAX_STEP_GROWTH, step * duration / elapsed), MAX_STEP);
+            } else if (elapsed > duration * 2) {
+                step = Math.max(step / 2, minStep);
+            }
+        }
+        lastLoadTime = now;
+        return step;
+    }
+
+    /**
+     * 号段 [min, max]
+     */
+    private static class Segment {
+        private final long min;
+        private final long max;
+        private final long step;
+        private final AtomicLong value;
+
+        private Segment(long min, long max) {
+            this.min = min;
+            this.max = max;
+            this.step = max - min + 1;
+            this.value = new AtomicLong(min);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.UUID;
+
+/**
+ * 同一主机多个进程共享的雪花算法状态，保存在内存映射文件中<p>
+ * <pre>
+ * [0, 4)   魔数
+ * [4, 8)   版本
+ * [8, 12)  共享的 flags，-1 表示未设置
+ * [16, 32) 共享的 Redis 锁 value（UUID）
+ * [32, 40) 状态：(时间戳 - 起始时间) &lt;&lt; 12 | 序号，通过 CAS 更新，进程崩溃不会留下不完整的状态
+ * [40, 48) 起始时间 {@link SnowflakeIdGenerator#START_TIME}
+ * </pre>
+ * 起始时间按 JVM 默认时区计算，时区不同的进程对同一状态计算出的 ID 时间戳不同，可能重复，打开时不一致则拒绝共享
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+public class SharedSnowflakeState implements Closeable {
+    private static final int MAGIC = 0x534E4F57;
+    private static final int VERSION = 2;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int FLAGS_OFFSET = 8;
+    private static final int OWNER_OFFSET = 16;
+    private static final int STATE_OFFSET = 32;
+    private static final int EPOCH_OFFSET = 40;
+    private static final int SIZE = 64;
+    private static final int NO_FLAGS = -1;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final MappedMemory memory;
+    private final String owner;
+
+    private SharedSnowflakeState(RandomAccessFile file, MappedByteBuffer buffer) {
+        this.file = file;
+        this.buffer = buffer;
+        this.memory = new MappedMemory(buffer);
+        this.owner = new UUID(buffer.getLong(OWNER_OFFSET), buffer.getLong(OWNER_OFFSET + 8)).toString();
+    }
+
+    /**
+     * 打开共享文件，文件不存在或已损坏时重新初始化
+     *
+     * @param path 共享文件路径
+     * @throws IOException           如果打开文件失败
+     * @throws IllegalStateException 如果文件中的起始时间与当前进程不一致
+     */
+    public static SharedSnowflakeState open(File path) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            final FileChannel channel = file.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+            final SharedSnowflakeState state;
+            try (FileLock ignored = channel.lock()) {
+                if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+                    reset(buffer);
+                }
+                final long epoch = buffer.getLong(EPOCH_OFFSET);
+                if (epoch != SnowflakeIdGenerator.START_TIME) {
+                    throw new IllegalStateException("共享文件起始时间=" + epoch + " 与当前进程起始时间=" + SnowflakeIdGenerator.START_TIME
+                            + " 不一致，共享同一文件的进程必须使用相同的 JVM 默认时区：" + path);
+                }
+                state = new SharedSnowflakeState(file, buffer);
+            }
+            return state;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 初始化文件头，状态设置为当前毫秒且序号已用完，恢复后从下一毫秒开始发放 ID
+     */
+    private static void reset(MappedByteBuffer buffer) {
+        final UUID owner = UUID.randomUUID();
+        final MappedMemory memory = new MappedMemory(buffer);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        memory.putIntVolatile(FLAGS_OFFSET, NO_FLAGS);
+        buffer.putLong(OWNER_OFFSET, owner.getMostSignificantBits());
+        buffer.putLong(OWNER_OFFSET + 8, owner.getLeastSignificantBits());
+        buffer.putLong(EPOCH_OFFSET, SnowflakeIdGenerator.START_TIME);
+        final long now = System.currentTimeMillis() - SnowflakeIdGenerator.START_TIME;
+        memory.putLongVolatile(STATE_OFFSET, (now << SnowflakeIdGenerator.SEQUENCE_BITS) | SnowflakeIdGenerator.MAX_SEQUENCE);
+        buffer.force();
+        // 魔数最后写入，写入过程中崩溃下次打开会重新初始化
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.force();
+    }
+
+    /**
+     * @return 共享的 Redis 锁 value，同一文件的所有进程相同
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return null 未设置
+     */
+    public Integer getFlags() {
+        final int flags = memory.getIntVolatile(FLAGS_OFFSET);
+        return flags == NO_FLAGS ? null : flags;
+    }
+
+    public void setFlags(int flags) {
+        memory.putIntVolatile(FLAGS_OFFSET, flags);
+    }
+
+    long get() {
+        return memory.getLongVolatile(STATE_OFFSET);
+    }
+
+    boolean compareAndSet(long expect, long update) {
+        return memory.compareAndSetLong(STATE_OFFSET, expect, update);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import java.nio.LongBuffer;
+
+/**
+ * 批量解析雪花算法 ID，结果按列写入输出数组，结果与 {@link SnowflakeIdGenerator} 的静态解析方法一致<p>
+ * 循环体只有移位、按位与，JIT 可以自动向量化；Java 21 及以上运行时添加 --add-modules jdk.incubator.vector 后使用 Vector API
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+public final class SnowflakeIdDecoder {
+    static final long TIMESTAMP_VALUE_MASK = ~(-1L << SnowflakeIdGenerator.TIMESTAMP_BITS);
+    static final int DATA_CENTER_ID_VALUE_MASK = SnowflakeIdGenerator.MAX_DATA_CENTER_ID;
+    static final int WORKER_ID_VALUE_MASK = SnowflakeIdGenerator.MAX_WORKER_ID;
+    static final int SEQUENCE_VALUE_MASK = SnowflakeIdGenerator.MAX_SEQUENCE;
+
+    private SnowflakeIdDecoder() {
+    }
+
+    /**
+     * 解析 ids[offset, offset + length)，第 i 个 ID 的结果写入各输出数组的下标 i
+     *
+     * @param ids           雪花算法 ID
+     * @param offset        ids 起始下标
+     * @param length        解析的 ID 数量
+     * @param timestamps    时间戳
+     * @param dataCenterIds 数据中心 ID
+     * @param workerIds     工作机器 ID
+     * @param sequences     序号
+     * @throws IllegalArgumentException 如果下标越界或输出数组长度小于 length
+     */
+    public static void decode(long[] ids, int offset, int length,
+                              long[] timestamps, int[] dataCenterIds, int[] workerIds, int[] sequences) {
+        if (offset < 0 || length < 0 || offset > ids.length - length) {
+            throw new IllegalArgumentException("下标越界，[offset=" + offset + ",length=" + length + ",ids.length=" + ids.length + "]");
+        }
+        checkOutput(length, timestamps, dataCenterIds, workerIds, sequences);
+        final int decoded = VectorizedDecoder.decode(ids, offset, length, timestamps, dataCenterIds, workerIds, sequences);
+        decodeScalar(ids, offset, decoded, length, timestamps, dataCenterIds, workerIds, sequences);
+    }
+
+    /**
+     * 解析 ids 中 position 到 limit 之间的 ID，不改变 ids 的 position，第 i 个 ID 的结果写入各输出数组的下标 i<p>
+     * 内存映射文件可以通过 {@code MappedByteBuffer.order(...).asLongBuffer()} 传入，字节序需要与写入时一致
+     *
+     * @throws IllegalArgumentException 如果输出数组长度小于 ids.remaining()
+     */
+    public static void decode(LongBuffer ids, long[] timestamps, int[] dataCenterIds, int[] workerIds, int[] sequences) {
+        final int length = ids.remaining();
+        if (ids.hasArray()) {
+            decode(ids.array(), ids.arrayOffset() + ids.position(), length, timestamps, dataCenterIds, workerIds, sequences);
+            return;
+        }
+        checkOutput(length, timestamps, dataCenterIds, workerIds, sequences);
+        // 堆外 buffer 逐个 get 无法向量化，批量复制到 timestamps 后原地解析，读写下标相同，不需要额外的数组
+        ids.duplicate().get(timestamps, 0, length);
+        final int decoded = VectorizedDecoder.decode(timestamps, 0, length, timestamps, dataCenterIds, workerIds, sequences);
+        decodeScalar(timestamps, 0, decoded, length, timestamps, dataCenterIds, workerIds, sequences);
+    }
+
+    /**
+     * 解析 ids[offset + from, offset + to)<p>
+     * C2 无法证明 ids 与 timestamps 不是同一个数组，读写下标不同时不会自动向量化，offset 为 0 时单独循环
+     */
+    private static void decodeScalar(long[] ids, int offset, int from, int to,
+                                     long[] timestamps, int[] dataCenterIds, int[] workerIds, int[] sequences) {
+        if (offset == 0) {
+            for (int i = from; i < to; i++) {
+                final long id = ids[i];
+                timestamps[i] = SnowflakeIdGenerator.START_TIME + ((id >>> SnowflakeIdGenerator.TIMESTAMP_SHIFT) & TIMESTAMP_VALUE_MASK);
+                dataCenterIds[i] = (int) ((id >>> SnowflakeIdGenerator.DATA_CENTER_ID_SHIFT) & DATA_CENTER_ID_VALUE_MASK);
+                workerIds[i] = (int) ((id >>> SnowflakeIdGenerator.WORKER_ID_SHIFT) & WORKER_ID_VALUE_MASK);
+                sequences[i] = (int) (id & SEQUENCE_VALUE_MASK);
+            }
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            final long id = ids[offset + i];
+            timestamps[i] = SnowflakeIdGenerator.START_TIME + ((id >>> SnowflakeIdGenerator.TIMESTAMP_SHIFT) & TIMESTAMP_VALUE_MASK);
+            dataCenterIds[i] = (int) ((id >>> SnowflakeIdGenerator.DATA_CENTER_ID_SHIFT) & DATA_CENTER_ID_VALUE_MASK);
+            workerIds[i] = (int) ((id >>> SnowflakeIdGenerator.WORKER_ID_SHIFT) & WORKER_ID_VALUE_MASK);
+            sequences[i] = (int) (id & SEQUENCE_VALUE_MASK);
+        }
+    }
+
+    private static void checkOutput(int length, long[] timestamps, int[] dataCenterIds, int[] workerIds, int[] sequences) {
+        if (timestamps.length < length || dataCenterIds.length < length || workerIds.length < length || sequences.length < length) {
+            throw new IllegalArgumentException("输出数组长度不能小于 " + length);
+        }
+    }
+}
@@ -37,16 +37,16 @@ import java.util.concurrent.locks.ReentrantLock;
  * @since 0.0.1
  */
 public class SnowflakeIdGenerator implements IdGenerator {
-    private static final int TIMESTAMP_BITS = 41;
+    static final int TIMESTAMP_BITS = 41;
     private static final int FLAGS_BITS = 10;
     private static final int DATA_CENTER_ID_BITS = 5;
     private static final int WORKER_ID_BITS = 5;
-    private static final int SEQUENCE_BITS = 12;
+    static final int SEQUENCE_BITS = 12;
 
-    private static final int TIMESTAMP_SHIFT = FLAGS_BITS + SEQUENCE_BITS;
-    private static final int FLAGS_SHIFT = SEQUENCE_BITS;
-    private static final int DATA_CENTER_ID_SHIFT = WORKER_ID_BITS + SEQUENCE_BITS;
-    private static final int WORKER_ID_SHIFT = SEQUENCE_BITS;
+    static final int TIMESTAMP_SHIFT = FLAGS_BITS + SEQUENCE_BITS;
+    static final int FLAGS_SHIFT = SEQUENCE_BITS;
+    static final int DATA_CENTER_ID_SHIFT = WORKER_ID_BITS + SEQUENCE_BITS;
+    static final int WORKER_ID_SHIFT = SEQUENCE_BITS;
 
     private static final long TIMESTAMP_MASK = (~(-1L << TIMESTAMP_BITS)) << TIMESTAMP_SHIFT;
     private static final long FLAGS_MASK = (~(-1L << (FLAGS_BITS))) << FLAGS_SHIFT;
@@ -63,7 +63,10 @@ public class SnowflakeIdGenerator implements IdGenerator {
     public static final int MIN_SEQUENCE = 0;
     public static final int MAX_SEQUENCE = (int) ~(-1L << SEQUENCE_BITS);
 
-    private static final long START_TIME;
+    /**
+     * 起始时间 2024-01-01 00:00:00.000，按 JVM 默认时区解析，修改会改变已发放 ID 的时间含义，必须在运行期初始化
+     */
+    static final long START_TIME;
 
     static {
         String date = "2024-01-01 00:00:00.000";
@@ -81,7 +84,7 @@ public class SnowflakeIdGenerator implements IdGenerator {
     private final long flags;
     private volatile long sequence;
 
-    public static void main(String[] args) throws ParseException {
+    public static void main(String[] args) {
         SnowflakeIdGenerator snowflake = new SnowflakeIdGenerator(5, 6);
         System.out.println(snowflake.getNextId());
         System.out.println(snowflake.getNextId());
@@ -175,7 +178,7 @@ public class SnowflakeIdGenerator implements IdGenerator {
     }
 
     public int getFlagsValue() {
-        return (int) (flags >> FLAGS_BITS);
+        return (int) (flags >> FLAGS_SHIFT);
     }
 
     public int getDataCenterIdValue() {
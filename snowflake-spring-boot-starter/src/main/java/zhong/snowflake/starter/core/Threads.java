@@ -0,0 +1,47 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import zhong.redis.lock.starter.utils.NamedThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 线程相关的运行时适配，Java 21 及以上版本使用 META-INF/versions/21 中的同名类
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+final class Threads {
+    private Threads() {
+    }
+
+    /**
+     * @param name 线程名前缀
+     * @return 定时任务使用的平台线程
+     */
+    static ThreadFactory newThreadFactory(String name) {
+        return new NamedThreadFactory(name);
+    }
+
+    /**
+     * ID 暂时不可用时让出 CPU
+     */
+    static void pause() {
+        Thread.yield();
+    }
+}
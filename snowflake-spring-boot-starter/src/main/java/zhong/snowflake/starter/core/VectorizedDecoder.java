@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+/**
+ * Vector API 批量解析，Java 21 及以上版本使用 META-INF/versions/21 中的同名类
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+final class VectorizedDecoder {
+    private VectorizedDecoder() {
+    }
+
+    /**
+     * @return 已解析的 ID 数量，剩余部分由标量循环解析
+     */
+    static int decode(long[] ids, int offset, int length,
+                      long[] timestamps, int[] dataCenterIds, int[] workerIds, int[] sequences) {
+        return 0;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 使用 jdk.incubator.vector 批量解析，每次处理一个 LongVector，int 列转换为位宽减半、通道数相同的 IntVector
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+final class IncubatorVectorDecoder {
+    private static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class, VectorShape.forBitSize(LONG_SPECIES.vectorBitSize() / 2));
+
+    private IncubatorVectorDecoder() {
+    }
+
+    /**
+     * @return 已解析的 ID 数量，为 LongVector 通道数的整数倍
+     */
+    static int decode(long[] ids, int offset, int length,
+                      long[] timestamps, int[] dataCenterIds, int[] workerIds, int[] sequences) {
+        final int upperBound = LONG_SPECIES.loopBound(length);
+        for (int i = 0; i < upperBound; i += LONG_SPECIES.length()) {
+            final LongVector v = LongVector.fromArray(LONG_SPECIES, ids, offset + i);
+            v.lanewise(VectorOperators.LSHR, SnowflakeIdGenerator.TIMESTAMP_SHIFT)
+                    .and(SnowflakeIdDecoder.TIMESTAMP_VALUE_MASK)
+                    .add(SnowflakeIdGenerator.START_TIME)
+                    .intoArray(timestamps, i);
+            toInt(v.lanewise(VectorOperators.LSHR, SnowflakeIdGenerator.DATA_CENTER_ID_SHIFT).and(SnowflakeIdDecoder.DATA_CENTER_ID_VALUE_MASK))
+                    .intoArray(dataCenterIds, i);
+            toInt(v.lanewise(VectorOperators.LSHR, SnowflakeIdGenerator.WORKER_ID_SHIFT).and(SnowflakeIdDecoder.WORKER_ID_VALUE_MASK))
+                    .intoArray(workerIds, i);
+            toInt(v.and(SnowflakeIdDecoder.SEQUENCE_VALUE_MASK))
+                    .intoArray(sequences, i);
+        }
+        return upperBound;
+    }
+
+    private static IntVector toInt(LongVector v) {
+        return (IntVector) v.convertShape(VectorOperators.L2I, INT_SPECIES, 0);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Java 21 及以上版本的线程适配，定时任务运行在虚拟线程上，虚拟线程等待时挂起而不占用载体线程
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+final class Threads {
+    /**
+     * 虚拟线程每次挂起的时长，小于 1ms 以便下一毫秒尽快获取到 ID
+     */
+    private static final long PARK_NANOS = 100_000;
+
+    private Threads() {
+    }
+
+    /**
+     * @param name 线程名前缀
+     * @return 定时任务使用的虚拟线程
+     */
+    static ThreadFactory newThreadFactory(String name) {
+        return Thread.ofVirtual().name(name + "-", 1).factory();
+    }
+
+    /**
+     * ID 暂时不可用时让出 CPU，虚拟线程挂起让出载体线程
+     */
+    static void pause() {
+        if (Thread.currentThread().isVirtual()) {
+            LockSupport.parkNanos(PARK_NANOS);
+        } else {
+            Thread.yield();
+        }
+    }
+}
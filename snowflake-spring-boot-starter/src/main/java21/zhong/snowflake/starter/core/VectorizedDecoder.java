@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+/**
+ * Java 21 及以上版本的 Vector API 批量解析，运行时未添加 jdk.incubator.vector 模块时不加载 {@link IncubatorVectorDecoder}
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+final class VectorizedDecoder {
+    private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorizedDecoder() {
+    }
+
+    /**
+     * @return 已解析的 ID 数量，剩余部分由标量循环解析
+     */
+    static int decode(long[] ids, int offset, int length,
+                      long[] timestamps, int[] dataCenterIds, int[] workerIds, int[] sequences) {
+        if (!AVAILABLE) {
+            return 0;
+        }
+        return IncubatorVectorDecoder.decode(ids, offset, length, timestamps, dataCenterIds, workerIds, sequences);
+    }
+}
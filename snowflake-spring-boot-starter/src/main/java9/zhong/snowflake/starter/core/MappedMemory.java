@@ -0,0 +1,60 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Java 9 及以上版本的内存映射文件原子读写，通过 ByteBuffer 视图 VarHandle 完成，不依赖 sun.misc.Unsafe<p>
+ * 与 Java 8 版本一样按本机字节序访问，不同版本的进程可以共享同一文件
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+final class MappedMemory {
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer buffer;
+
+    MappedMemory(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    int getIntVolatile(int index) {
+        return (int) INT.getVolatile(buffer, index);
+    }
+
+    void putIntVolatile(int index, int value) {
+        INT.setVolatile(buffer, index, value);
+    }
+
+    long getLongVolatile(int index) {
+        return (long) LONG.getVolatile(buffer, index);
+    }
+
+    void putLongVolatile(int index, long value) {
+        LONG.setVolatile(buffer, index, value);
+    }
+
+    boolean compareAndSetLong(int index, long expect, long update) {
+        return LONG.compareAndSet(buffer, index, expect, update);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import zhong.redis.lock.starter.core.RedisLock;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存版 {@link RedisLock}，多个客户端共享同一个 {@link Store}<p>
+ * 每个客户端可以单独注入延迟、故障与网络分区，过期时间由 {@link VirtualClock} 驱动
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+public class InMemoryRedisLock implements RedisLock {
+    private final Store store;
+    private final Random random;
+    private volatile long latency;
+    private volatile double failureRate;
+    private volatile boolean partitioned;
+    private final AtomicLong callCount = new AtomicLong();
+
+    public InMemoryRedisLock(Store store, long seed) {
+        this.store = store;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param latency 每次调用推进虚拟时钟的时长，单位：ms
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param failureRate 调用失败的概率，失败可能发生在执行命令之前或之后（响应丢失）
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public void setPartitioned(boolean partitioned) {
+        this.partitioned = partitioned;
+    }
+
+    @Override
+    public boolean lock(String key, String value, long timeout, TimeUnit unit) {
+        beforeCall();
+        final boolean success = store.setIfAbsent(key, value, unit.toMillis(timeout));
+        afterCall();
+        return success;
+    }
+
+    @Override
+    public boolean expire(String key, String value, long timeout, TimeUnit unit) {
+        beforeCall();
+        final boolean success = store.expire(key, value, unit.toMillis(timeout));
+        afterCall();
+        return success;
+    }
+
+    /**
+     * 模拟续期脚本，一次调用内逐个 key 执行 {@link #expire}
+     *
+     * @return 每个 key 是否延长成功
+     */
+    public boolean[] renew(List<String> keys, String value, long timeout, TimeUnit unit) {
+        beforeCall();
+        final boolean[] success = new boolean[keys.size()];
+        for (int i = 0; i < success.length; i++) {
+            success[i] = store.expire(keys.get(i), value, unit.toMillis(timeout));
+        }
+        afterCall();
+        return success;
+    }
+
+    /**
+     * @return 调用 Redis 的次数
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    private void beforeCall() {
+        callCount.incrementAndGet();
+        if (partitioned) {
+            throw new IllegalStateException("模拟网络分区");
+        }
+        if (latency > 0) {
+            store.clock.advance(latency);
+        }
+        if (shouldFail()) {
+            throw new IllegalStateException("模拟 Redis 调用失败");
+        }
+    }
+
+    private void afterCall() {
+        if (shouldFail()) {
+            throw new IllegalStateException("模拟 Redis 响应丢失");
+        }
+    }
+
+    private boolean shouldFail() {
+        if (failureRate <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < failureRate;
+        }
+    }
+
+    /**
+     * 共享的 Redis 数据
+     */
+    public static class Store {
+        private final VirtualClock clock;
+        private final Map<String, Entry> map = new HashMap<>();
+
+        public Store(VirtualClock clock) {
+            this.clock = clock;
+        }
+
+        public synchronized boolean setIfAbsent(String key, String value, long ttl) {
+            if (get(key) != null) {
+                return false;
+            }
+            map.put(key, new Entry(value, clock.millis() + ttl));
+            return true;
+        }
+
+        public synchronized boolean expire(String key, String value, long ttl) {
+            final Entry e = map.get(key);
+            if (e == null || e.expireAt <= clock.millis() || !e.value.equals(value)) {
+                return false;
+            }
+            e.expireAt = clock.millis() + ttl;
+            return true;
+        }
+
+        /**
+         * @return null key 不存在或已过期
+         */
+        public synchronized String get(String key) {
+            final Entry e = map.get(key);
+            if (e == null) {
+                return null;
+            }
+            if (e.expireAt <= clock.millis()) {
+                map.remove(key);
+                return null;
+            }
+            return e.value;
+        }
+
+        public synchronized void set(String key, String value, long ttl) {
+            map.put(key, new Entry(value, clock.millis() + ttl));
+        }
+
+        public synchronized void delete(String key) {
+            map.remove(key);
+        }
+    }
+
+    private static class Entry {
+        private final String value;
+        private long expireAt;
+
+        private Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Zhong
+ * @since 0.0.1
+ */
+@RunWith(JUnit4.class)
+public class MappedSnowflakeIdGeneratorTest {
+    private static final Logger log = LoggerFactory.getLogger(MappedSnowflakeIdGeneratorTest.class);
+
+    private static final int FLAGS = 7;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 子进程入口：args[0] 共享文件，args[1] ID 数量，args[2] 输出文件
+     */
+    public static void main(String[] args) throws IOException {
+        final int len = Integer.parseInt(args[1]);
+        try (SharedSnowflakeState state = SharedSnowflakeState.open(new File(args[0]));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[2])))) {
+            final MappedSnowflakeIdGenerator s = new MappedSnowflakeIdGenerator(FLAGS, state);
+            for (int i = 0; i < len; i++) {
+                for (; ; ) {
+                    Long id = s.getNextId();
+                    if (id != null) {
+                        out.writeLong(id);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_getNextId_sharedState() throws IOException, InterruptedException {
+        final File file = folder.newFile();
+        final int threadNumber = 10;
+        final int len = 1024 * 10;
+        final long[][] arr = new long[threadNumber][len];
+        // 同一文件的两个映射，模拟两个进程
+        try (SharedSnowflakeState state1 = SharedSnowflakeState.open(file);
+             SharedSnowflakeState state2 = SharedSnowflakeState.open(file)) {
+            Assert.assertEquals(state1.getOwner(), state2.getOwner());
+            final MappedSnowflakeIdGenerator s1 = new MappedSnowflakeIdGenerator(FLAGS, state1);
+            final MappedSnowflakeIdGenerator s2 = new MappedSnowflakeIdGenerator(FLAGS, state2);
+            List<Thread> threadList = new ArrayList<>(threadNumber);
+            for (int i = 0; i < threadNumber; i++) {
+                final int threadIndex = i;
+                final MappedSnowflakeIdGenerator s = i % 2 == 0 ? s1 : s2;
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < len; j++) {
+                        for (; ; ) {
+                            Long id = s.getNextId();
+                            if (id != null) {
+                                arr[threadIndex][j] = id;
+                                break;
+                            }
+                        }
+                    }
+                });
+                threadList.add(thread);
+                thread.start();
+            }
+            for (Thread e : threadList) {
+                e.join();
+            }
+        }
+
+        Set<Long> set = new HashSet<>(len * threadNumber);
+        for (int i = 0; i < threadNumber; i++) {
+            for (long id : arr[i]) {
+                Assert.assertEquals(FLAGS, SnowflakeIdGenerator.getFlagsValue(id));
+                set.add(id);
+            }
+        }
+        Assert.assertEquals(len * threadNumber, set.size());
+    }
+
+    @Test
+    public void test_open_recover() throws IOException {
+        final File file = folder.newFile();
+        final String owner;
+        try (SharedSnowflakeState state = SharedSnowflakeState.open(file)) {
+            Assert.assertNull(state.getFlags());
+            state.setFlags(FLAGS);
+            owner = state.getOwner();
+        }
+        try (SharedSnowflakeState state = SharedSnowflakeState.open(file)) {
+            Assert.assertEquals(Integer.valueOf(FLAGS), state.getFlags());
+            Assert.assertEquals(owner, state.getOwner());
+        }
+
+        // 文件头损坏后重新初始化，从下一毫秒开始发放 ID
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.writeInt(0);
+        }
+        final long now = System.currentTimeMillis();
+        try (SharedSnowflakeState state = SharedSnowflakeState.open(file)) {
+            Assert.assertNull(state.getFlags());
+            Assert.assertNotEquals(owner, state.getOwner());
+            final MappedSnowflakeIdGenerator s = new MappedSnowflakeIdGenerator(FLAGS, state);
+            Long id;
+            while ((id = s.getNextId()) == null) {
+                Thread.yield();
+            }
+            Assert.assertTrue(SnowflakeIdGenerator.getTimestampValue(id) > now - 1);
+            Assert.assertEquals(0, SnowflakeIdGenerator.getSequenceValue(id));
+        }
+    }
+
+    @Test
+    public void test_open_epochMismatch() throws IOException {
+        final File file = folder.newFile();
+        SharedSnowflakeState.open(file).close();
+        // 模拟其他时区的进程创建的文件
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(40);
+            raf.writeLong(SnowflakeIdGenerator.START_TIME + TimeUnit.HOURS.toMillis(1));
+        }
+        try {
+            SharedSnowflakeState.open(file).close();
+            Assert.fail("起始时间不一致时不能共享");
+        } catch (IllegalStateException e) {
+            log.info("拒绝共享：{}", e.getMessage());
+        }
+    }
+
+    @Test
+    public void test_getNextId_multiProcess() throws IOException, InterruptedException {
+        final File file = folder.newFile();
+        final int processNumber = 4;
+        final int len = 200_000;
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final String classpath = System.getProperty("java.class.path");
+
+        final List<Process> processList = new ArrayList<>(processNumber);
+        final List<File> outList = new ArrayList<>(processNumber);
+        for (int i = 0; i < processNumber; i++) {
+            final File out = folder.newFile();
+            outList.add(out);
+            processList.add(new ProcessBuilder(java, "-cp", classpath, MappedSnowflakeIdGeneratorTest.class.getName(),
+                    file.getAbsolutePath(), String.valueOf(len), out.getAbsolutePath())
+                    .inheritIO()
+                    .start());
+        }
+        for (Process e : processList) {
+            Assert.assertTrue(e.waitFor(60, TimeUnit.SECONDS));
+            Assert.assertEquals(0, e.exitValue());
+        }
+
+        Set<Long> set = new HashSet<>(len * processNumber);
+        for (File out : outList) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(out)))) {
+                for (; ; ) {
+                    set.add(in.readLong());
+                }
+            } catch (EOFException e) {
+                // 读取结束
+            }
+        }
+        log.info("{} 个进程共生成 {} 个不重复 ID", processNumber, set.size());
+        Assert.assertEquals(len * processNumber, set.size());
+    }
+}
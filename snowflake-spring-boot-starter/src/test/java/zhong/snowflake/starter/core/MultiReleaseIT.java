@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在 Java 21 上针对打包后的多版本 JAR 运行，验证 META-INF/versions 中的类被加载且结果正确<p>
+ * 由 java21 profile 的 failsafe 执行，测试源码需要能在 Java 8 编译，Java 9 及以上的 API 通过反射调用
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+@RunWith(JUnit4.class)
+public class MultiReleaseIT {
+    private static final int COUNT = 10_007;
+
+    @Test
+    public void test_threads() throws Exception {
+        assertVersioned(Threads.class, 21);
+        final ThreadFactory factory = Threads.newThreadFactory("测试");
+        final CompletableFuture<Boolean> isVirtual = new CompletableFuture<>();
+        final Thread thread = factory.newThread(() -> {
+            try {
+                Threads.pause();
+                isVirtual.complete((Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+            } catch (ReflectiveOperationException e) {
+                isVirtual.completeExceptionally(e);
+            }
+        });
+        thread.start();
+        Assert.assertTrue(isVirtual.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_vectorizedDecoder() throws ClassNotFoundException {
+        assertVersioned(VectorizedDecoder.class, 21);
+        assertVersioned(Class.forName("zhong.snowflake.starter.core.IncubatorVectorDecoder"), 21);
+
+        final long[] ids = new long[COUNT];
+        final Random random = new Random(0);
+        for (int i = 0; i < COUNT; i++) {
+            ids[i] = random.nextLong() & Long.MAX_VALUE;
+        }
+        final int offset = 3;
+        final int length = COUNT - 5;
+        final long[] timestamps = new long[length];
+        final int[] dataCenterIds = new int[length];
+        final int[] workerIds = new int[length];
+        final int[] sequences = new int[length];
+        final int decoded = VectorizedDecoder.decode(ids, offset, length, timestamps, dataCenterIds, workerIds, sequences);
+        Assert.assertTrue("未使用 Vector API，decoded=" + decoded, decoded > 0);
+        for (int i = 0; i < decoded; i++) {
+            final long id = ids[offset + i];
+            Assert.assertEquals(SnowflakeIdGenerator.getTimestampValue(id), timestamps[i]);
+            Assert.assertEquals(SnowflakeIdGenerator.getDataCenterIdValue(id), dataCenterIds[i]);
+            Assert.assertEquals(SnowflakeIdGenerator.getWorkerIdValue(id), workerIds[i]);
+            Assert.assertEquals(SnowflakeIdGenerator.getSequenceValue(id), sequences[i]);
+        }
+    }
+
+    @Test
+    public void test_mappedMemory() throws IOException {
+        assertVersioned(MappedMemory.class, 9);
+        final File file = File.createTempFile("snowflake", ".state");
+        Assert.assertTrue(file.delete());
+        try (SharedSnowflakeState state = SharedSnowflakeState.open(file)) {
+            Assert.assertNull(state.getFlags());
+            state.setFlags(7);
+            Assert.assertEquals(Integer.valueOf(7), state.getFlags());
+            final long value = state.get();
+            Assert.assertTrue(state.compareAndSet(value, value + 1));
+            Assert.assertFalse(state.compareAndSet(value, value + 2));
+            Assert.assertEquals(value + 1, state.get());
+        } finally {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    private static void assertVersioned(Class<?> clazz, int version) {
+        final String resource = String.valueOf(clazz.getResource(clazz.getSimpleName() + ".class"));
+        Assert.assertTrue(resource, resource.contains("!/META-INF/versions/" + version + "/"));
+    }
+}
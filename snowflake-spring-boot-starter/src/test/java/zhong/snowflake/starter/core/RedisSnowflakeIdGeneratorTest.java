@@ -0,0 +1,759 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.powermock.reflect.Whitebox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import zhong.snowflake.starter.SnowflakeProps;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 {@link InMemoryRedisLock} 的租约故障模拟
+ *
+ * @author Zhong
+ * @since 0.0.1
+ */
+@RunWith(JUnit4.class)
+public class RedisSnowflakeIdGeneratorTest {
+    private static final Logger log = LoggerFactory.getLogger(RedisSnowflakeIdGeneratorTest.class);
+
+    private static final int KEEP_ALIVE = 60_000;
+    private static final double FACTOR = 1.5;
+
+    private VirtualClock clock;
+    private InMemoryRedisLock.Store store;
+    private Map<Object, Object> values;
+    /**
+     * 模拟 Redis TIME 与本机时钟的偏差
+     */
+    private volatile long redisTimeOffset;
+    /**
+     * 模拟延长时长脚本执行后、结果返回前发生的事件
+     */
+    private volatile Runnable afterRenew;
+    private final List<RedisSnowflakeIdGenerator> generators = new ArrayList<>();
+
+    @Before
+    public void before() {
+        clock = new VirtualClock(System.currentTimeMillis());
+        store = new InMemoryRedisLock.Store(clock);
+        values = new ConcurrentHashMap<>();
+    }
+
+    @After
+    public void after() {
+        for (RedisSnowflakeIdGenerator e : generators) {
+            e.destroy();
+        }
+    }
+
+    @Test
+    public void test_keepAlive_renew() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, false);
+        final Integer flags = getHeldFlags(g);
+        Assert.assertNotNull(flags);
+        for (int i = 0; i < 10; i++) {
+            clock.advance(KEEP_ALIVE);
+            tick(g);
+            Assert.assertEquals(flags, getHeldFlags(g));
+            Assert.assertNotNull(g.getNextId());
+        }
+    }
+
+    @Test
+    public void test_keepAlive_reset() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, false);
+        final Integer flags = getHeldFlags(g);
+        // key 被淘汰，expire 失败后重新 lock 同一个 flags
+        store.delete("snowflake:" + flags);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertEquals(flags, getHeldFlags(g));
+        Assert.assertEquals(getServerId(g), store.get("snowflake:" + flags));
+    }
+
+    @Test
+    public void test_keepAlive_rescan() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, false);
+        final Integer flags = getHeldFlags(g);
+        // key 被其他节点占用，expire、lock 都失败后遍历获取
+        store.set("snowflake:" + flags, "other", KEEP_ALIVE * 10);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        final Integer newFlags = getHeldFlags(g);
+        Assert.assertNotNull(newFlags);
+        Assert.assertNotEquals(flags, newFlags);
+        Assert.assertEquals(getServerId(g), store.get("snowflake:" + newFlags));
+    }
+
+    @Test
+    public void test_keepAlive_skipWhenTaskRunning() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, false);
+        final Integer flags = getHeldFlags(g);
+        store.delete("snowflake:" + flags);
+        Whitebox.setInternalState(g, "isTaskRunning", true);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertNull(store.get("snowflake:" + flags));
+        Whitebox.setInternalState(g, "isTaskRunning", false);
+        tick(g);
+        Assert.assertEquals(getServerId(g), store.get("snowflake:" + flags));
+    }
+
+    @Test
+    public void test_destroy_handoff() throws Exception {
+        final RedisSnowflakeIdGenerator g1 = newGenerator(newRedisLock(0), null, false);
+        final Integer flags = getHeldFlags(g1);
+        final Long id = g1.getNextId();
+        Assert.assertNotNull(id);
+
+        // 记录最后时间戳，锁缩短为 1ms
+        g1.destroy();
+        final String lastTimestamp = (String) values.get("snowflake:timestamp:" + flags);
+        Assert.assertNotNull(lastTimestamp);
+        Assert.assertTrue(Long.parseLong(lastTimestamp) >= SnowflakeIdGenerator.getTimestampValue(id));
+        Assert.assertEquals(getServerId(g1), store.get("snowflake:" + flags));
+        clock.advance(1);
+        Assert.assertNull(store.get("snowflake:" + flags));
+
+        // 其他节点立即复用同一个 flags
+        final RedisSnowflakeIdGenerator g2 = newGenerator(newRedisLock(0), null, false);
+        Assert.assertEquals(flags, getHeldFlags(g2));
+        g2.destroy();
+        clock.advance(1);
+
+        // 上一个持有者的最后时间戳超前于本机时钟时等待
+        final long ahead = System.currentTimeMillis() + 200;
+        values.put("snowflake:timestamp:" + flags, String.valueOf(ahead));
+        final long start = System.currentTimeMillis();
+        final RedisSnowflakeIdGenerator g3 = newGenerator(newRedisLock(0), null, false);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+        Assert.assertEquals(flags, getHeldFlags(g3));
+        Assert.assertTrue(SnowflakeIdGenerator.getTimestampValue(g3.getNextId()) > ahead);
+    }
+
+    @Test
+    public void test_destroy_closeSharedFile() throws Exception {
+        final File file = File.createTempFile("snowflake", ".state");
+        file.deleteOnExit();
+        final SnowflakeProps props = newProps();
+        props.setSharedFile(file.getAbsolutePath());
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), props);
+        Assert.assertNotNull(g.getNextId());
+        final SharedSnowflakeState state = Whitebox.getInternalState(g, "sharedState");
+        final RandomAccessFile raf = Whitebox.getInternalState(state, "file");
+        Assert.assertTrue(raf.getChannel().isOpen());
+        g.destroy();
+        Assert.assertFalse(raf.getChannel().isOpen());
+    }
+
+    @Test
+    public void test_handoff_bounded() throws Exception {
+        final RedisSnowflakeIdGenerator g1 = newGenerator(newRedisLock(0), null, false);
+        final Integer flags = getHeldFlags(g1);
+        Assert.assertNotNull(g1.getNextId());
+
+        // 已失去 flags 的节点释放时不能覆盖新持有者的时间戳，也不能缩短其租约
+        store.set("snowflake:" + flags, "other", KEEP_ALIVE);
+        values.put("snowflake:timestamp:" + flags, "1");
+        g1.destroy();
+        Assert.assertEquals("1", values.get("snowflake:timestamp:" + flags));
+        clock.advance(1);
+        Assert.assertEquals("other", store.get("snowflake:" + flags));
+        store.delete("snowflake:" + flags);
+
+        // 时间戳超前太多或无法解析时不等待，释放后获取下一个 flags
+        values.put("snowflake:timestamp:" + flags, String.valueOf(System.currentTimeMillis() + KEEP_ALIVE));
+        final int next = flags + 1;
+        values.put("snowflake:timestamp:" + next, "corrupt");
+        final long start = System.currentTimeMillis();
+        final RedisSnowflakeIdGenerator g2 = newGenerator(newRedisLock(0), null, false);
+        Assert.assertTrue(System.currentTimeMillis() - start < 1_000);
+        final Integer newFlags = getHeldFlags(g2);
+        Assert.assertNotNull(newFlags);
+        Assert.assertNotEquals(flags, newFlags);
+        Assert.assertNotEquals(Integer.valueOf(next), newFlags);
+        clock.advance(1);
+        Assert.assertNull(store.get("snowflake:" + flags));
+        Assert.assertNull(store.get("snowflake:" + next));
+    }
+
+    @Test
+    public void test_keepAlive_renewResponseLost() throws Exception {
+        final SnowflakeProps props = newProps();
+        props.setStandby(true);
+        props.setMaxLeases(2);
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), props);
+        final Integer flags = getHeldFlags(g);
+        final Integer standbyFlags = getStandbyFlags(g);
+        Assert.assertNotNull(standbyFlags);
+        for (int i = 0; i < 3; i++) {
+            ((LongAdder) Whitebox.getInternalState(g, "exhaustedCount")).increment();
+            runOnThreadPool(g, "elasticTask");
+        }
+        Assert.assertEquals(1, getExtras(g).length);
+        final int extraFlags = getExtras(g)[0].getFlagsValue();
+
+        // 延长时长已生效但响应丢失，租约可能在下一次定时任务前过期，停止发放 ID 并释放额外 flags
+        afterRenew = () -> {
+            throw new IllegalStateException("模拟 Redis 响应丢失");
+        };
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertNull(getHeldFlags(g));
+        Assert.assertEquals(0, getExtras(g).length);
+        clock.advance(1);
+        Assert.assertNull(store.get("snowflake:" + extraFlags));
+
+        // 原主 flags 仍然有效，恢复使用而不是切换到备用 flags
+        afterRenew = null;
+        tick(g);
+        Assert.assertEquals(flags, getHeldFlags(g));
+        Assert.assertEquals(standbyFlags, getStandbyFlags(g));
+        Assert.assertNotNull(g.getNextId());
+    }
+
+    @Test
+    public void test_keepAlive_partition() throws Exception {
+        final InMemoryRedisLock redisLock = newRedisLock(0);
+        final RedisSnowflakeIdGenerator g = newGenerator(redisLock, null, false);
+        redisLock.setPartitioned(true);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        // 租约会在下一次定时任务前过期，必须停止发放 ID
+        Assert.assertNull(getHeldFlags(g));
+        Assert.assertNull(g.getNextId());
+
+        redisLock.setPartitioned(false);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertNotNull(getHeldFlags(g));
+        Assert.assertNotNull(g.getNextId());
+    }
+
+    @Test
+    public void test_clockSkew() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, false);
+        Assert.assertNull(g.getClockSkew());
+
+        // 本机时钟比 Redis 快 5s，续约成功但暂停发放 ID
+        redisTimeOffset = -5_000;
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertEquals(5_000L, (long) g.getClockSkew());
+        Assert.assertTrue(g.isClockSkewed());
+        Assert.assertNotNull(getHeldFlags(g));
+        Assert.assertNull(g.getNextId());
+
+        // 偏差在上限内
+        redisTimeOffset = 800;
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertEquals(-800L, (long) g.getClockSkew());
+        Assert.assertFalse(g.isClockSkewed());
+        Assert.assertNotNull(g.getNextId());
+    }
+
+    @Test
+    public void test_asyncInit() throws Exception {
+        // dataCenterId=0 的 flags 全部被占用，同步启动会抛出异常
+        for (int i = SnowflakeIdGenerator.MIN_WORKER_ID; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+            store.set("snowflake:" + SnowflakeIdGenerator.getFlagsValue(0, i), "other", KEEP_ALIVE * 10);
+        }
+        final SnowflakeProps props = newProps();
+        props.setDataCenterId(0);
+        props.setAsyncInit(true);
+        props.setInitTimeout(100);
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), props);
+        final RedisSnowflakeHealthIndicator healthIndicator = new RedisSnowflakeHealthIndicator(g);
+        Assert.assertFalse(g.isReady());
+        Assert.assertEquals(Status.OUT_OF_SERVICE, healthIndicator.health().getStatus());
+        final long start = System.currentTimeMillis();
+        Assert.assertNull(g.getNextId());
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+
+        // 首次获取到 flags 前的调用方等待，定时任务获取到 flags 后返回
+        Whitebox.setInternalState(g, "initTimeout", 10_000);
+        final CompletableFuture<Long> future = CompletableFuture.supplyAsync(g::getNextId);
+        final int flags = SnowflakeIdGenerator.getFlagsValue(0, 5);
+        store.delete("snowflake:" + flags);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertNotNull(future.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(flags, (int) getHeldFlags(g));
+        Assert.assertEquals(Status.UP, healthIndicator.health().getStatus());
+        Assert.assertEquals(flags, healthIndicator.health().getDetails().get("flags"));
+    }
+
+    @Test
+    public void test_standby_failover() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, true);
+        final Integer flags = getHeldFlags(g);
+        final Integer standbyFlags = getStandbyFlags(g);
+        Assert.assertNotNull(standbyFlags);
+        Assert.assertNotEquals(flags, standbyFlags);
+
+        store.set("snowflake:" + flags, "other", KEEP_ALIVE * 10);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertEquals(standbyFlags, getHeldFlags(g));
+        Assert.assertNotNull(g.getNextId());
+        // 备用 flags 已异步补充
+        Assert.assertNotNull(getStandbyFlags(g));
+        Assert.assertNotEquals(standbyFlags, getStandbyFlags(g));
+    }
+
+    @Test
+    public void test_keyspace_event() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, true);
+        final Integer flags = getHeldFlags(g);
+        final Integer standbyFlags = getStandbyFlags(g);
+
+        // 自己重置锁触发的 set 事件、时间戳 key 的事件不影响持有的 flags
+        publishKeyspaceEvent(g, "snowflake:" + flags, "set");
+        publishKeyspaceEvent(g, "snowflake:timestamp:" + flags, "del");
+        Assert.assertEquals(flags, getHeldFlags(g));
+        Assert.assertEquals(standbyFlags, getStandbyFlags(g));
+
+        // 不等待定时任务，被覆盖后立即切换到备用 flags 并补充备用 flags
+        store.set("snowflake:" + flags, "other", KEEP_ALIVE * 10);
+        publishKeyspaceEvent(g, "snowflake:" + flags, "set");
+        Assert.assertEquals(standbyFlags, getHeldFlags(g));
+        Assert.assertNotNull(getStandbyFlags(g));
+        Assert.assertNotEquals(standbyFlags, getStandbyFlags(g));
+
+        // 过期后立即重新获取
+        final Integer newStandbyFlags = getStandbyFlags(g);
+        store.delete("snowflake:" + newStandbyFlags);
+        publishKeyspaceEvent(g, "snowflake:" + newStandbyFlags, "expired");
+        Assert.assertEquals(standbyFlags, getHeldFlags(g));
+        Assert.assertEquals(getServerId(g), store.get("snowflake:" + getStandbyFlags(g)));
+
+        store.delete("snowflake:" + standbyFlags);
+        publishKeyspaceEvent(g, "snowflake:" + standbyFlags, "expired");
+        Assert.assertNotNull(getHeldFlags(g));
+        Assert.assertEquals(getServerId(g), store.get("snowflake:" + getHeldFlags(g)));
+        Assert.assertNotNull(g.getNextId());
+    }
+
+    @Test
+    public void test_keyspace_event_duringRenew() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, false);
+        final Integer flags = getHeldFlags(g);
+        final ScheduledExecutorService threadPool = Whitebox.getInternalState(g, "threadPool");
+        final CountDownLatch gate = new CountDownLatch(1);
+        // 延长成功后 key 被删除，通知先于延长结果到达，通知提交的定时任务先阻塞
+        afterRenew = () -> {
+            afterRenew = null;
+            threadPool.execute(() -> {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            store.delete("snowflake:" + flags);
+            sendKeyspaceEvent(g, "snowflake:" + flags, "del");
+        };
+        clock.advance(KEEP_ALIVE);
+        final Method method = RedisSnowflakeIdGenerator.class.getDeclaredMethod("keepAliveTask");
+        method.setAccessible(true);
+        method.invoke(g);
+        Assert.assertNull(getHeldFlags(g));
+        Assert.assertNull(g.getNextId());
+
+        gate.countDown();
+        awaitThreadPool(g);
+        Assert.assertNotNull(getHeldFlags(g));
+        Assert.assertEquals(getServerId(g), store.get("snowflake:" + getHeldFlags(g)));
+    }
+
+    @Test
+    public void test_keepAlive_batch() throws Exception {
+        final SnowflakeProps props = newProps();
+        props.setStandby(true);
+        props.setMaxLeases(3);
+        final InMemoryRedisLock redisLock = newRedisLock(0);
+        final RedisSnowflakeIdGenerator g = newGenerator(redisLock, props);
+        final Integer flags = getHeldFlags(g);
+        final Integer standbyFlags = getStandbyFlags(g);
+        for (int i = 0; i < 3 * 2; i++) {
+            ((LongAdder) Whitebox.getInternalState(g, "exhaustedCount")).increment();
+            runOnThreadPool(g, "elasticTask");
+        }
+        final SnowflakeIdGenerator[] extras = getExtras(g);
+        Assert.assertEquals(2, extras.length);
+
+        // 主、备用、额外 flags 在一次调用中延长
+        for (int i = 0; i < 2; i++) {
+            clock.advance(KEEP_ALIVE);
+            final long callCount = redisLock.getCallCount();
+            tick(g);
+            Assert.assertEquals(callCount + 1, redisLock.getCallCount());
+        }
+        Assert.assertEquals(flags, getHeldFlags(g));
+        Assert.assertEquals(standbyFlags, getStandbyFlags(g));
+        Assert.assertEquals(getServerId(g), store.get("snowflake:" + standbyFlags));
+        for (SnowflakeIdGenerator e : extras) {
+            Assert.assertEquals(getServerId(g), store.get("snowflake:" + e.getFlagsValue()));
+        }
+
+        // 根据每个 flags 的结果丢弃额外 flags、补充备用 flags
+        store.set("snowflake:" + extras[0].getFlagsValue(), "other", KEEP_ALIVE * 10);
+        store.set("snowflake:" + standbyFlags, "other", KEEP_ALIVE * 10);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        Assert.assertEquals(flags, getHeldFlags(g));
+        Assert.assertArrayEquals(new SnowflakeIdGenerator[]{extras[1]}, getExtras(g));
+        final Integer newStandbyFlags = getStandbyFlags(g);
+        Assert.assertNotNull(newStandbyFlags);
+        Assert.assertNotEquals(standbyFlags, newStandbyFlags);
+        Assert.assertEquals(getServerId(g), store.get("snowflake:" + newStandbyFlags));
+    }
+
+    @Test
+    public void test_keyspace_event_reacquire() throws Exception {
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), null, false);
+        final Integer flags = getHeldFlags(g);
+        final Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 100; j++) {
+                final Long id = g.getNextId();
+                if (id != null) {
+                    Assert.assertTrue("重复 ID=" + id, ids.add(id));
+                }
+            }
+            // key 过期后没有记录时间戳，重新获取到同一个 flags 不能重复发放同一毫秒的序号
+            store.delete("snowflake:" + flags);
+            publishKeyspaceEvent(g, "snowflake:" + flags, "expired");
+            Assert.assertEquals(flags, getHeldFlags(g));
+        }
+        for (int j = 0; j < 100; j++) {
+            final Long id = g.getNextId();
+            if (id != null) {
+                Assert.assertTrue("重复 ID=" + id, ids.add(id));
+            }
+        }
+    }
+
+    @Test
+    public void test_elastic() throws Exception {
+        final SnowflakeProps props = newProps();
+        props.setMaxLeases(3);
+        final RedisSnowflakeIdGenerator g = newGenerator(newRedisLock(0), props);
+        final Integer flags = getHeldFlags(g);
+
+        // 连续出现 ID 达到上限，额外锁定 flags
+        for (int i = 0; i < 3 * 3; i++) {
+            ((LongAdder) Whitebox.getInternalState(g, "exhaustedCount")).increment();
+            runOnThreadPool(g, "elasticTask");
+        }
+        final SnowflakeIdGenerator[] extras = getExtras(g);
+        Assert.assertEquals(2, extras.length);
+        final Set<Integer> leased = new HashSet<>();
+        leased.add(flags);
+        for (SnowflakeIdGenerator e : extras) {
+            Assert.assertTrue(leased.add(e.getFlagsValue()));
+            Assert.assertEquals(getServerId(g), store.get("snowflake:" + e.getFlagsValue()));
+        }
+
+        // 额外 flags 与主 flags 一起延长时长
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        clock.advance(KEEP_ALIVE);
+        tick(g);
+        for (Integer e : leased) {
+            Assert.assertEquals(getServerId(g), store.get("snowflake:" + e));
+        }
+
+        final int len = 100_000;
+        final Set<Long> ids = new HashSet<>(len);
+        final Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < len; i++) {
+            Long id;
+            while ((id = g.getNextId()) == null) {
+                Thread.yield();
+            }
+            Assert.assertTrue(ids.add(id));
+            used.add(SnowflakeIdGenerator.getFlagsValue(id));
+        }
+        Assert.assertTrue(leased.containsAll(used));
+
+        // 负载下降后逐个释放
+        Whitebox.setInternalState(g, "issuedCount", new LongAdder());
+        for (int i = 0; i < 60 * 2; i++) {
+            runOnThreadPool(g, "elasticTask");
+        }
+        Assert.assertEquals(0, getExtras(g).length);
+        // 释放即把过期时间缩短为 1ms
+        clock.advance(1);
+        for (SnowflakeIdGenerator e : extras) {
+            Assert.assertNull(store.get("snowflake:" + e.getFlagsValue()));
+        }
+        Assert.assertEquals(flags, getHeldFlags(g));
+    }
+
+    /**
+     * 多个实例竞争 32 个 flags，随机注入故障与网络分区，任何时刻都不能有两个实例持有相同的 flags
+     */
+    @Test
+    public void test_simulation() throws Exception {
+        final int instanceNumber = 20;
+        final int rounds = 200;
+        final Random random = new Random(20240101L);
+
+        final List<InMemoryRedisLock> redisLocks = new ArrayList<>(instanceNumber);
+        final List<RedisSnowflakeIdGenerator> list = new ArrayList<>(instanceNumber);
+        for (int i = 0; i < instanceNumber; i++) {
+            final InMemoryRedisLock redisLock = newRedisLock(i);
+            redisLock.setLatency(1);
+            redisLocks.add(redisLock);
+            list.add(newGenerator(redisLock, 0, false));
+        }
+
+        final long startTime = clock.millis();
+        final long[] closedSince = new long[instanceNumber];
+        long unavailableTime = 0;
+        long maxRecoverTime = 0;
+        int recoverCount = 0;
+
+        for (int round = 0; round < rounds; round++) {
+            final boolean healthy = round >= rounds - 3;
+            for (InMemoryRedisLock e : redisLocks) {
+                e.setFailureRate(healthy ? 0 : 0.05);
+                e.setPartitioned(!healthy && random.nextDouble() < 0.05);
+            }
+
+            final long roundStart = clock.advance(KEEP_ALIVE);
+            for (RedisSnowflakeIdGenerator e : list) {
+                tick(e);
+            }
+            final long roundEnd = clock.millis();
+
+            final Map<Integer, Integer> holders = new HashMap<>();
+            for (int i = 0; i < instanceNumber; i++) {
+                final RedisSnowflakeIdGenerator g = list.get(i);
+                final Integer flags = getHeldFlags(g);
+                if (flags == null) {
+                    if (closedSince[i] == 0) {
+                        closedSince[i] = roundStart;
+                    }
+                    continue;
+                }
+                if (closedSince[i] != 0) {
+                    final long recoverTime = roundEnd - closedSince[i];
+                    unavailableTime += recoverTime;
+                    maxRecoverTime = Math.max(maxRecoverTime, recoverTime);
+                    recoverCount++;
+                    closedSince[i] = 0;
+                }
+                final Integer other = holders.put(flags, i);
+                Assert.assertNull("round " + round + " 实例 " + other + " 与 " + i + " 同时持有 flags=" + flags, other);
+                Assert.assertEquals("round " + round + " 实例 " + i + " 租约已失效", getServerId(g), store.get("snowflake:" + flags));
+            }
+        }
+
+        for (int i = 0; i < instanceNumber; i++) {
+            Assert.assertNotNull("实例 " + i + " 恢复健康后仍未持有 flags", getHeldFlags(list.get(i)));
+        }
+        log.info("恢复次数={}，最长恢复时间={}ms，累计不可用时间={}ms，平均不可用比例={}",
+                recoverCount, maxRecoverTime, unavailableTime, (double) unavailableTime / (instanceNumber * (clock.millis() - startTime)));
+    }
+
+    private InMemoryRedisLock newRedisLock(long seed) {
+        return new InMemoryRedisLock(store, seed);
+    }
+
+    private RedisSnowflakeIdGenerator newGenerator(InMemoryRedisLock redisLock, Integer dataCenterId, boolean standby) throws Exception {
+        final SnowflakeProps props = newProps();
+        props.setDataCenterId(dataCenterId);
+        props.setStandby(standby);
+        return newGenerator(redisLock, props);
+    }
+
+    private static SnowflakeProps newProps() {
+        final SnowflakeProps props = new SnowflakeProps();
+        props.setKeepAlive(KEEP_ALIVE);
+        props.setFactor(FACTOR);
+        return props;
+    }
+
+    private RedisSnowflakeIdGenerator newGenerator(InMemoryRedisLock redisLock, SnowflakeProps props) throws Exception {
+        final RedisSnowflakeIdGenerator g = new RedisSnowflakeIdGenerator();
+        Whitebox.setInternalState(g, "snowflakeProps", props);
+        Whitebox.setInternalState(g, "redisLock", redisLock);
+        Whitebox.setInternalState(g, "stringRedisTemplate", newStringRedisTemplate(redisLock));
+        Whitebox.setInternalState(g, "serverId", "instance-" + generators.size());
+        Whitebox.setInternalState(g, "clock", clock);
+        g.init();
+        generators.add(g);
+        // 等待异步获取 flags、备用 flags
+        awaitThreadPool(g);
+        return g;
+    }
+
+    /**
+     * 在定时任务线程执行一次延长时长任务，并等待其提交的异步任务结束
+     */
+    private static void tick(RedisSnowflakeIdGenerator g) throws Exception {
+        runOnThreadPool(g, "keepAliveTask");
+    }
+
+    private static void runOnThreadPool(RedisSnowflakeIdGenerator g, String methodName) throws Exception {
+        final ScheduledExecutorService threadPool = Whitebox.getInternalState(g, "threadPool");
+        final Method method = RedisSnowflakeIdGenerator.class.getDeclaredMethod(methodName);
+        method.setAccessible(true);
+        threadPool.submit(() -> method.invoke(g)).get();
+        awaitThreadPool(g);
+    }
+
+    private static void awaitThreadPool(RedisSnowflakeIdGenerator g) throws Exception {
+        final ScheduledExecutorService threadPool = Whitebox.getInternalState(g, "threadPool");
+        threadPool.submit(() -> {
+        }).get();
+    }
+
+    /**
+     * 模拟 Redis 推送 keyspace 通知，并等待其提交的异步任务结束
+     */
+    private static void publishKeyspaceEvent(RedisSnowflakeIdGenerator g, String key, String event) throws Exception {
+        sendKeyspaceEvent(g, key, event);
+        // 校验任务会再提交定时任务，定时任务会再提交获取备用 flags 任务
+        for (int i = 0; i < 3; i++) {
+            awaitThreadPool(g);
+        }
+    }
+
+    /**
+     * 模拟 Redis 推送 keyspace 通知，不等待其提交的异步任务
+     */
+    private static void sendKeyspaceEvent(RedisSnowflakeIdGenerator g, String key, String event) {
+        try {
+            final Method method = RedisSnowflakeIdGenerator.class.getDeclaredMethod("onKeyspaceEvent", Message.class, byte[].class);
+            method.setAccessible(true);
+            final Message message = new DefaultMessage(("__keyspace@0__:" + key).getBytes(StandardCharsets.UTF_8), event.getBytes(StandardCharsets.UTF_8));
+            method.invoke(g, message, "__keyspace@*__:snowflake:*".getBytes(StandardCharsets.UTF_8));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Integer getHeldFlags(RedisSnowflakeIdGenerator g) {
+        final boolean isOpen = Whitebox.getInternalState(g, "isOpen");
+        if (!isOpen) {
+            return null;
+        }
+        final SnowflakeIdGenerator s = Whitebox.getInternalState(g, "proxyObject");
+        return s.getFlagsValue();
+    }
+
+    private static Integer getStandbyFlags(RedisSnowflakeIdGenerator g) {
+        final SnowflakeIdGenerator s = Whitebox.getInternalState(g, "standbyObject");
+        return s == null ? null : s.getFlagsValue();
+    }
+
+    private static SnowflakeIdGenerator[] getExtras(RedisSnowflakeIdGenerator g) {
+        final AtomicReference<SnowflakeIdGenerator[]> extras = Whitebox.getInternalState(g, "extraObjects");
+        return extras.get();
+    }
+
+    private static String getServerId(RedisSnowflakeIdGenerator g) {
+        return Whitebox.getInternalState(g, "serverId");
+    }
+
+    @SuppressWarnings("unchecked")
+    private StringRedisTemplate newStringRedisTemplate(InMemoryRedisLock redisLock) {
+        final Map<Object, Object> map = values;
+        final ValueOperations<String, String> ops = (ValueOperations<String, String>) Proxy.newProxyInstance(
+                ValueOperations.class.getClassLoader(), new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "get":
+                            return map.get(args[0]);
+                        case "set":
+                            map.put(args[0], args[1]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return new StringRedisTemplate() {
+            @Override
+            public ValueOperations<String, String> opsForValue() {
+                return ops;
+            }
+
+            /**
+             * 延长时长脚本与释放脚本，故障注入与 {@link InMemoryRedisLock} 一致
+             */
+            @Override
+            public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+                if (script == RedisSnowflakeIdGenerator.RELEASE_SCRIPT) {
+                    final boolean success = redisLock.expire(keys.get(0), (String) args[0], 1, TimeUnit.MILLISECONDS);
+                    if (success && !"".equals(args[1])) {
+                        map.put(keys.get(1), args[1]);
+                    }
+                    return (T) Long.valueOf(success ? 1 : 0);
+                }
+                final boolean[] success = redisLock.renew(keys, (String) args[0], Long.parseLong((String) args[1]), TimeUnit.MILLISECONDS);
+                final long redisTime = clock.millis() + redisTimeOffset;
+                final List<Long> result = new ArrayList<>(success.length + 2);
+                result.add(redisTime / 1000);
+                result.add(redisTime % 1000 * 1000);
+                for (boolean e : success) {
+                    result.add(e ? 1L : 0L);
+                }
+                final Runnable r = afterRenew;
+                if (r != null) {
+                    r.run();
+                }
+                return (T) result;
+            }
+        };
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @author Zhong
+ * @since 0.0.1
+ */
+@RunWith(JUnit4.class)
+public class SampledDuplicateDetectorTest {
+    private static final Logger log = LoggerFactory.getLogger(SampledDuplicateDetectorTest.class);
+
+    @Test
+    public void test_noDuplicate() {
+        final int count = 1_000_000;
+        final int sample = 64;
+        final SnowflakeIdGenerator snowflake = new SnowflakeIdGenerator(1);
+        final SampledDuplicateDetector s = new SampledDuplicateDetector(snowflake, sample, 60_000,
+                SampledDuplicateDetector.DEFAULT_BITS, id -> Assert.fail("误报重复 ID=" + id));
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; ) {
+            if (s.getNextId() != null) {
+                i++;
+            }
+        }
+        log.info("{} 个 ID 抽样 {} 个，平均耗时 {}ns", count, s.getSampledCount(), (System.nanoTime() - start) / count);
+        Assert.assertEquals(0, s.getDuplicateCount());
+        Assert.assertTrue(s.getSampledCount() > count / sample / 2);
+        Assert.assertTrue(s.getSampledCount() < count / sample * 2);
+    }
+
+    @Test
+    public void test_duplicate() {
+        final Iterator<Long> ids = Arrays.asList(1L, 2L, 3L, 2L, 4L, 1L).iterator();
+        final List<Long> duplicates = new ArrayList<>();
+        final SampledDuplicateDetector s = new SampledDuplicateDetector(ids::next, 1, 60_000,
+                SampledDuplicateDetector.DEFAULT_BITS, duplicates::add);
+        for (int i = 0; i < 6; i++) {
+            Assert.assertNotNull(s.getNextId());
+        }
+        Assert.assertEquals(6, s.getSampledCount());
+        Assert.assertEquals(2, s.getDuplicateCount());
+        Assert.assertEquals(Arrays.asList(2L, 1L), duplicates);
+    }
+
+    @Test
+    public void test_duplicate_sampled() {
+        // 按 ID 哈希抽样，重复的 ID 与第一次发放时一样会被抽中
+        final SnowflakeIdGenerator snowflake = new SnowflakeIdGenerator(1);
+        final List<Long> issued = new ArrayList<>();
+        final SampledDuplicateDetector s = new SampledDuplicateDetector(() -> {
+            final Long id = issued.size() < 10_000 ? snowflake.getNextId() : issued.get(issued.size() - 10_000);
+            if (id != null) {
+                issued.add(id);
+            }
+            return id;
+        }, 16, 60_000, SampledDuplicateDetector.DEFAULT_BITS, null);
+        while (issued.size() < 20_000) {
+            s.getNextId();
+        }
+        Assert.assertTrue(s.getDuplicateCount() > 0);
+        Assert.assertEquals(s.getSampledCount() / 2, s.getDuplicateCount());
+    }
+
+    @Test
+    public void test_saturated() {
+        // 64 位的过滤器只能写入 1 个 ID，之后抽中的 ID 只检测不写入
+        final Iterator<Long> ids = Arrays.asList(1L, 2L, 3L, 2L, 1L).iterator();
+        final List<Long> duplicates = new ArrayList<>();
+        final SampledDuplicateDetector s = new SampledDuplicateDetector(ids::next, 1, 60_000, 64, duplicates::add);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotNull(s.getNextId());
+        }
+        Assert.assertEquals(3, s.getSaturatedCount());
+        Assert.assertEquals(Collections.singletonList(1L), duplicates);
+    }
+
+    @Test
+    public void test_getBits() {
+        Assert.assertEquals(64, SampledDuplicateDetector.getBits(0));
+        Assert.assertEquals(64, SampledDuplicateDetector.getBits(1));
+        Assert.assertEquals(128, SampledDuplicateDetector.getBits(2));
+        Assert.assertEquals(SampledDuplicateDetector.DEFAULT_BITS, SampledDuplicateDetector.getBits(SampledDuplicateDetector.DEFAULT_BITS / 64));
+        Assert.assertEquals(SampledDuplicateDetector.DEFAULT_BITS * 2, SampledDuplicateDetector.getBits(SampledDuplicateDetector.DEFAULT_BITS / 64 + 1));
+        Assert.assertEquals(SampledDuplicateDetector.MAX_BITS, SampledDuplicateDetector.getBits(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalidSample() {
+        new SampledDuplicateDetector(new SnowflakeIdGenerator(1), 3, 60_000, SampledDuplicateDetector.DEFAULT_BITS, null);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.powermock.reflect.Whitebox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Zhong
+ * @since 0.0.1
+ */
+@RunWith(JUnit4.class)
+public class SegmentIdGeneratorTest {
+    private static final Logger log = LoggerFactory.getLogger(SegmentIdGeneratorTest.class);
+
+    private static final String TABLE = "snowflake_segment";
+    private static final long DURATION = 900_000;
+
+    private JdbcDataSource dataSource;
+
+    @Before
+    public void before() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:segment;DB_CLOSE_DELAY=-1");
+        try (Connection c = dataSource.getConnection(); Statement st = c.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + TABLE);
+            st.execute("CREATE TABLE " + TABLE + " (biz_tag VARCHAR(128) NOT NULL PRIMARY KEY, max_id BIGINT NOT NULL)");
+        }
+    }
+
+    @Test
+    public void test_getNextId_dense() {
+        final SegmentIdGenerator s = new SegmentIdGenerator(dataSource, TABLE, "dense", 1_000, DURATION);
+        try {
+            for (long i = 1; i <= 100_000; i++) {
+                Assert.assertEquals(Long.valueOf(i), s.getNextId());
+            }
+        } finally {
+            s.shutdown();
+        }
+    }
+
+    @Test
+    public void test_getNextId_loadCount() {
+        final SegmentIdGenerator s = new SegmentIdGenerator(dataSource, TABLE, "loadCount", 1_000, DURATION);
+        try {
+            for (int i = 0; i < 1_000_000; i++) {
+                Assert.assertNotNull(s.getNextId());
+            }
+            log.info("1000000 个 ID 加载号段次数={}，当前步长={}", s.getLoadCount(), s.getStep());
+            Assert.assertTrue(s.getLoadCount() < 10);
+        } finally {
+            s.shutdown();
+        }
+    }
+
+    @Test
+    public void test_getNextId_restart() {
+        final SegmentIdGenerator s1 = new SegmentIdGenerator(dataSource, TABLE, "restart", 1_000, DURATION);
+        final long last;
+        try {
+            last = s1.getNextId();
+        } finally {
+            s1.shutdown();
+        }
+        final SegmentIdGenerator s2 = new SegmentIdGenerator(dataSource, TABLE, "restart", 1_000, DURATION);
+        try {
+            Assert.assertTrue(s2.getNextId() > last);
+        } finally {
+            s2.shutdown();
+        }
+    }
+
+    @Test
+    public void test_getNextId_preloadFailed() {
+        final SegmentIdGenerator s = new SegmentIdGenerator(dataSource, TABLE, "preloadFailed", 10, DURATION);
+        try {
+            Assert.assertEquals(Long.valueOf(1), s.getNextId());
+            final CompletableFuture<?> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("模拟预加载失败"));
+            Whitebox.setInternalState(s, "nextSegment", failed);
+            // 预加载失败时同一次调用中同步加载
+            for (long i = 2; i <= 20; i++) {
+                Assert.assertEquals(Long.valueOf(i), s.getNextId());
+            }
+        } finally {
+            s.shutdown();
+        }
+    }
+
+    @Test
+    public void test_getNextId_preloadTimeout() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean isBlocking = new AtomicBoolean(false);
+        final JdbcDataSource slowDataSource = new JdbcDataSource() {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (isBlocking.compareAndSet(true, false)) {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getConnection();
+            }
+        };
+        slowDataSource.setURL(dataSource.getURL());
+        final SegmentIdGenerator s = new SegmentIdGenerator(slowDataSource, TABLE, "preloadTimeout", 10, DURATION);
+        try {
+            Assert.assertEquals(Long.valueOf(1), s.getNextId());
+            isBlocking.set(true);
+            for (long i = 2; i <= 10; i++) {
+                Assert.assertEquals(Long.valueOf(i), s.getNextId());
+            }
+            blocked.await();
+            Assert.assertNull(s.getNextId());
+
+            // 超时的预加载完成后继续使用，号段不会被跳过
+            release.countDown();
+            for (long i = 11; i <= 30; i++) {
+                Assert.assertEquals(Long.valueOf(i), s.getNextId());
+            }
+        } finally {
+            s.shutdown();
+        }
+    }
+
+    @Test
+    public void test_getNextId_concurrent() throws InterruptedException {
+        final int threadNumber = 10;
+        final int len = 100_000;
+        final long[][] arr = new long[threadNumber][len];
+        final AtomicBoolean isFailure = new AtomicBoolean(false);
+        // 两个实例共享同一个 bizTag
+        final SegmentIdGenerator s1 = new SegmentIdGenerator(dataSource, TABLE, "concurrent", 100, DURATION);
+        final SegmentIdGenerator s2 = new SegmentIdGenerator(dataSource, TABLE, "concurrent", 100, DURATION);
+        try {
+            List<Thread> threadList = new ArrayList<>(threadNumber);
+            for (int i = 0; i < threadNumber; i++) {
+                final int threadIndex = i;
+                final SegmentIdGenerator s = i % 2 == 0 ? s1 : s2;
+                Thread thread = new Thread(() -> {
+                    for (int j = 0; j < len; j++) {
+                        Long id = s.getNextId();
+                        if (id == null) {
+                            isFailure.set(true);
+                            return;
+                        }
+                        arr[threadIndex][j] = id;
+                    }
+                });
+                threadList.add(thread);
+                thread.start();
+            }
+            for (Thread e : threadList) {
+                e.join();
+            }
+        } finally {
+            s1.shutdown();
+            s2.shutdown();
+        }
+
+        Assert.assertFalse(isFailure.get());
+        Set<Long> set = new HashSet<>(len * threadNumber);
+        for (int i = 0; i < threadNumber; i++) {
+            for (long id : arr[i]) {
+                set.add(id);
+            }
+        }
+        Assert.assertEquals(len * threadNumber, set.size());
+    }
+}
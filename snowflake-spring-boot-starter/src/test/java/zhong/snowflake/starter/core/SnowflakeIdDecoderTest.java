@@ -0,0 +1,127 @@
+/*
+ * Copyright 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zhong.snowflake.starter.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Random;
+
+/**
+ * @author Zhong
+ * @since 0.0.1
+ */
+@RunWith(JUnit4.class)
+public class SnowflakeIdDecoderTest {
+    private static final int COUNT = 10_007;
+
+    @Test
+    public void test_decode_array() {
+        final long[] ids = newIds();
+        final int offset = 3;
+        final int length = COUNT - 5;
+        final Columns c = new Columns(length);
+        SnowflakeIdDecoder.decode(ids, offset, length, c.timestamps, c.dataCenterIds, c.workerIds, c.sequences);
+        c.assertEquals(ids, offset, length);
+
+        SnowflakeIdDecoder.decode(ids, 0, length, c.timestamps, c.dataCenterIds, c.workerIds, c.sequences);
+        c.assertEquals(ids, 0, length);
+    }
+
+    @Test
+    public void test_decode_buffer() {
+        final long[] ids = newIds();
+        final LongBuffer heap = LongBuffer.wrap(ids);
+        heap.position(7);
+        final Columns c1 = new Columns(heap.remaining());
+        SnowflakeIdDecoder.decode(heap, c1.timestamps, c1.dataCenterIds, c1.workerIds, c1.sequences);
+        c1.assertEquals(ids, 7, COUNT - 7);
+        Assert.assertEquals(7, heap.position());
+
+        final LongBuffer direct = ByteBuffer.allocateDirect(COUNT * Long.BYTES).asLongBuffer();
+        direct.put(ids).flip();
+        final Columns c2 = new Columns(COUNT);
+        SnowflakeIdDecoder.decode(direct, c2.timestamps, c2.dataCenterIds, c2.workerIds, c2.sequences);
+        c2.assertEquals(ids, 0, COUNT);
+        Assert.assertEquals(0, direct.position());
+
+        // 与本机字节序不同、position 不为 0
+        final ByteOrder order = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        final LongBuffer swapped = ByteBuffer.allocateDirect(COUNT * Long.BYTES).order(order).asLongBuffer();
+        swapped.put(ids).position(5);
+        final Columns c3 = new Columns(swapped.remaining());
+        SnowflakeIdDecoder.decode(swapped, c3.timestamps, c3.dataCenterIds, c3.workerIds, c3.sequences);
+        c3.assertEquals(ids, 5, COUNT - 5);
+        Assert.assertEquals(5, swapped.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_decode_outOfBounds() {
+        final Columns c = new Columns(10);
+        SnowflakeIdDecoder.decode(new long[10], 1, 10, c.timestamps, c.dataCenterIds, c.workerIds, c.sequences);
+    }
+
+    /**
+     * 真实 ID 与随机 long 混合，随机 long 覆盖符号位等异常输入
+     */
+    private static long[] newIds() {
+        final Random random = new Random(20240101L);
+        final long[] ids = new long[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            if (i % 2 == 0) {
+                final SnowflakeIdGenerator g = new SnowflakeIdGenerator(random.nextInt(SnowflakeIdGenerator.MAX_FLAGS + 1));
+                Long id;
+                while ((id = g.getNextId()) == null) {
+                    Thread.yield();
+                }
+                ids[i] = id;
+            } else {
+                ids[i] = random.nextLong();
+            }
+        }
+        return ids;
+    }
+
+    private static class Columns {
+        private final long[] timestamps;
+        private final int[] dataCenterIds;
+        private final int[] workerIds;
+        private final int[] sequences;
+
+        private Columns(int length) {
+            timestamps = new long[length];
+            dataCenterIds = new int[length];
+            workerIds = new int[length];
+            sequences = new int[length];
+        }
+
+        private void assertEquals(long[] ids, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                final long id = ids[offset + i];
+                Assert.assertEquals(SnowflakeIdGenerator.getTimestampValue(id), timestamps[i]);
+                Assert.assertEquals(SnowflakeIdGenerator.getDataCenterIdValue(id), dataCenterIds[i]);
+                Assert.assertEquals(SnowflakeIdGenerator.getWorkerIdValue(id), workerIds[i]);
+                Assert.assertEquals(SnowflakeIdGenerator.getSequenceValue(id), sequences[i]);
+            }
+        }
+    }
+}
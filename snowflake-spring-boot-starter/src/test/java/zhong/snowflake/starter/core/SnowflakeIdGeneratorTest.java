@@ -23,6 +23,8 @@ import org.junit.runners.JUnit4;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -30,6 +32,7 @@ import java.util.Set;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -50,6 +53,38 @@ public class SnowflakeIdGeneratorTest {
         test_getNextId_core(new SnowflakeIdGenerator(1, 2));
     }
 
+    @Test
+    public void test_getNextId_timeout() throws InterruptedException {
+        final IdGenerator idGenerator = new SnowflakeIdGenerator(1);
+        final Set<Long> set = new HashSet<>();
+        // 至少跨越 2 次单毫秒 ID 达到上限
+        for (int i = 0; i < (SnowflakeIdGenerator.MAX_SEQUENCE + 1) * 3; i++) {
+            Assert.assertTrue(set.add(idGenerator.getNextId(1, TimeUnit.SECONDS)));
+        }
+        final IdGenerator unavailable = () -> null;
+        Assert.assertNull(unavailable.getNextId(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void test_getFlagsValue() {
+        Assert.assertEquals(SnowflakeIdGenerator.MAX_FLAGS, new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_FLAGS).getFlagsValue());
+        Assert.assertEquals(SnowflakeIdGenerator.getFlagsValue(3, 4), new SnowflakeIdGenerator(3, 4).getFlagsValue());
+        Long id = new SnowflakeIdGenerator(5).getNextId();
+        Assert.assertNotNull(id);
+        Assert.assertEquals(5, SnowflakeIdGenerator.getFlagsValue(id));
+    }
+
+    @Test
+    public void test_getTimestampValue() {
+        final long startTime = LocalDateTime.of(2024, 1, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Assert.assertEquals(startTime, SnowflakeIdGenerator.getTimestampValue(0L));
+
+        final long now = System.currentTimeMillis();
+        Long id = new SnowflakeIdGenerator(1).getNextId();
+        Assert.assertNotNull(id);
+        Assert.assertTrue(SnowflakeIdGenerator.getTimestampValue(id) >= now);
+    }
+
     private void test_getNextId_core(final SnowflakeIdGenerator s) {
         final AtomicBoolean isFailure = new AtomicBoolean(false);
         final int threadNumber = 10;